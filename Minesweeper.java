@@ -1,4 +1,32 @@
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 import tester.*;
 import javalib.impworld.*;
 import java.awt.Color;
@@ -34,6 +62,11 @@ class Cell {
   void placeMine() {
     this.hasMine = true;
   }
+
+  // mutates a cell and takes its mine away
+  void removeMine() {
+    this.hasMine = false;
+  }
   
   // reveals all the mines if the game is lost
   void gameReveal() {
@@ -67,6 +100,11 @@ class Cell {
     this.revealed = true;
   }
 
+  // mutates a cell and covers it up again
+  void cover() {
+    this.revealed = false;
+  }
+
   // to draw all the different cell variants
   public WorldImage draw() {
     WorldImage mineImage = new CircleImage(10, OutlineMode.SOLID, Color.red);
@@ -169,6 +207,11 @@ class Cell {
 
 // to represent the MineSweeper World
 class MineSweeper extends World {
+  // the most cells the window shows along each side
+  static final int VIEW_ROWS = 40;
+  static final int VIEW_COLUMNS = 24;
+  // the space around the minimap, in pixels
+  static final int MINIMAP_MARGIN = 10;
   int rows;
   int columns;
   ArrayList<ArrayList<Cell>> board;
@@ -179,11 +222,68 @@ class MineSweeper extends World {
   boolean gameOver;
   boolean win;
   int flagCount;
+  // which cells count as neighbors (square grid, torus, hex, ...)
+  ITopology topology;
+  // the neighbors of every cell, worked out once for this board size
+  NeighborTable neighborTable;
+  // where the mines are, so finding them doesn't mean scanning the board
+  MineIndex mines;
+  // the openings of the current mine layout, null until first needed
+  OpeningIndex openings;
+  // the covered cells next to revealed numbers, and the numbers next to
+  // covered cells, kept up to date once first needed
+  Frontier frontier;
+  // how many cells without mines have been revealed
+  int revealedSafe;
+  // the cells changed by the batch of moves being applied, if any
+  IntList changes;
+  // Zobrist hash of what the player can see: revealed cells (with their
+  // numbers) and flags, kept up to date on every change
+  long hash;
+  // who hears about changes, and the events of the current operation
+  // waiting to be handed to them
+  ArrayList<IBoardListener> listeners;
+  long[] events;
+  int eventCount;
+  // the changes made by each move, for undo and redo
+  MoveHistory history;
+  // big openings still being revealed, a slice per frame
+  RevealScheduler reveals;
+  // how long a frame lasts, and how much of the clock's next second
+  // has gone by, in seconds
+  double tickSeconds;
+  double elapsed;
+  // how many moves the player has made on this board
+  int clicks;
+  // works out hints in the background, null until the first is asked
+  // for, and the hint shown, null if there isn't one
+  HintService hints;
+  Hint hint;
+  // the top left cell of the part of the board in the window, and the
+  // minimap for moving it, null until first drawn (or if the whole board
+  // fits)
+  int viewRow;
+  int viewColumn;
+  Minimap minimap;
 
   // constructor for choosing own amount of mines
   MineSweeper(int rows, int columns, Random rand, int mineCap) {
+    this(rows, columns, rand, mineCap, new SquareTopology());
+  }
+
+  // constructor for choosing own amount of mines and the board's topology
+  MineSweeper(int rows, int columns, Random rand, int mineCap, ITopology topology) {
     this.rows = rows;
     this.columns = columns;
+    this.topology = topology;
+    this.listeners = new ArrayList<IBoardListener>();
+    this.events = new long[64];
+    this.history = new MoveHistory(MoveHistory.DEFAULT_CAPACITY);
+    this.reveals = new RevealScheduler();
+    this.tickSeconds = 1;
+    // precomputes every cell's neighbor indices so nothing
+    // downstream has to check for edges again
+    this.neighborTable = new NeighborTable(topology, rows, columns);
     // board initially starts off empty
     this.board = new ArrayList<ArrayList<Cell>>();
     // random value for placing mines
@@ -204,9 +304,31 @@ class MineSweeper extends World {
     this.flagCount = mineCap;
   }
 
+  // constructor for a board generated from a seed, which comes out the
+  // same no matter how many cores generate it
+  MineSweeper(int rows, int columns, long seed, int mineCap, ITopology topology) {
+    // starts from an empty board, then places the generated mines
+    this(rows, columns, new Random(seed), 0, topology);
+    this.mineCap = mineCap;
+    this.flagCount = mineCap;
+    this.placeMines(new BoardGenerator(topology).generate(rows, columns, mineCap, seed));
+  }
+
+  // constructor for a board with the mines of the given packed board
+  MineSweeper(PackedBoard packed, ITopology topology) {
+    this(packed.rows, packed.columns, new Random(), 0, topology);
+    this.mineCap = packed.mineCount();
+    this.flagCount = this.mineCap;
+    this.placeMines(packed);
+  }
+
   // draws the current scene
+  // a board too big for the window is drawn through a view of
+  // VIEW_ROWS x VIEW_COLUMNS cells, with the minimap beside it
   public WorldScene makeScene() {
-    WorldScene scene = new WorldScene(rows * 30, columns * 30);
+    int viewRows = this.viewRows();
+    int viewColumns = this.viewColumns();
+    WorldScene scene = new WorldScene(this.sceneWidth(), this.sceneHeight());
     WorldImage clock = new TextImage("【" + this.minutesAsString() + " : " 
         + this.secondsAsString() + "】", 30, FontStyle.BOLD, Color.red);
     WorldImage flagImage = new RotateImage(new EquilateralTriangleImage(19, "solid", Color.RED),
@@ -216,53 +338,283 @@ class MineSweeper extends World {
         flagImage);
     WorldImage flagCount = new BesideImage(flagWithPole, 
         new TextImage(Integer.toString(this.flagCount), 25, Color.DARK_GRAY));
-    WorldImage winText = new TextImage(("You win"), rows * 2, FontStyle.BOLD, Color.BLACK);
-    WorldImage clickedMineText = new TextImage(("You clicked a mine :("), rows * 2,
+    WorldImage winText = new TextImage(("You win"), viewRows * 2, FontStyle.BOLD, Color.BLACK);
+    WorldImage clickedMineText = new TextImage(("You clicked a mine :("), viewRows * 2,
         FontStyle.BOLD, Color.BLACK);
     WorldImage endTimeText = new TextImage("Time: " 
         + this.minutesAsString() + " : " + this.secondsAsString(), 
-        rows, FontStyle.BOLD, Color.BLACK);
+        viewRows, FontStyle.BOLD, Color.BLACK);
     WorldImage restartText = new TextImage("Press r to restart" , 
-        rows, FontStyle.BOLD, Color.BLACK);
-    WorldImage whiteRect = new RectangleImage(rows * 23, columns * 5, 
+        viewRows, FontStyle.BOLD, Color.BLACK);
+    WorldImage whiteRect = new RectangleImage(viewRows * 23, viewColumns * 5, 
         OutlineMode.SOLID, Color.WHITE);
-    WorldImage blueRect = new RectangleImage(rows * 25, columns * 6, OutlineMode.SOLID, Color.cyan);
+    WorldImage blueRect = new RectangleImage(viewRows * 25, viewColumns * 6, OutlineMode.SOLID,
+        Color.cyan);
     WorldImage whiteOnBlueRect = new OverlayImage(whiteRect, blueRect);
-    for (int r = 0; r < rows; r++) {
+    for (int r = 0; r < viewRows; r++) {
       // in-play game scene
-      for (int c = 0; c < columns; c++) {
-        scene.placeImageXY(this.board.get(r).get(c).draw(), r * 30 + 15, c * 30 + 15);
-        scene.placeImageXY(clock, rows * 30 - 95, columns * 30 + 25);
-        scene.placeImageXY(flagCount, rows + 20, columns * 30 + 25);
+      for (int c = 0; c < viewColumns; c++) {
+        scene.placeImageXY(this.board.get(this.viewRow + r).get(this.viewColumn + c).draw(),
+            r * 30 + 15, c * 30 + 15);
+        scene.placeImageXY(clock, viewRows * 30 - 95, viewColumns * 30 + 25);
+        scene.placeImageXY(flagCount, viewRows + 20, viewColumns * 30 + 25);
       }
     }
+    // outlines the hinted cell, if it's in view: green if it's sure to be safe
+    if (this.hint != null && this.hint.cell >= 0) {
+      int r = this.hint.cell / columns - this.viewRow;
+      int c = this.hint.cell % columns - this.viewColumn;
+      if (r >= 0 && r < viewRows && c >= 0 && c < viewColumns) {
+        scene.placeImageXY(new RectangleImage(26, 26, OutlineMode.OUTLINE,
+            this.hint.certain ? Color.GREEN : Color.ORANGE), r * 30 + 15, c * 30 + 15);
+      }
+    }
+    // the minimap, with the part of the board in view outlined
+    Minimap map = this.minimap();
+    if (map != null) {
+      WorldImage overview = map.draw();
+      int left = viewRows * 30 + MINIMAP_MARGIN;
+      scene.placeImageXY(overview, left + (int) overview.getWidth() / 2,
+          MINIMAP_MARGIN + (int) overview.getHeight() / 2);
+      double perCell = map.pixelsPerCell();
+      scene.placeImageXY(new RectangleImage((int) Math.ceil(viewRows * perCell),
+          (int) Math.ceil(viewColumns * perCell), OutlineMode.OUTLINE, Color.BLUE),
+          left + (int) ((this.viewRow + viewRows / 2.0) * perCell),
+          MINIMAP_MARGIN + (int) ((this.viewColumn + viewColumns / 2.0) * perCell));
+    }
     // scene made when game is over
     if (this.gameOver) {
       scene.placeImageXY(new OverlayImage(new AboveImage(
           clickedMineText, endTimeText, restartText), whiteOnBlueRect), 
-          rows * 15, columns * 15); 
+          viewRows * 15, viewColumns * 15); 
     }
     // scene if game is won
     if (this.win) {
       scene.placeImageXY(new OverlayImage(new AboveImage(
-          winText, endTimeText), whiteOnBlueRect), rows * 15, columns * 15);
+          winText, endTimeText), whiteOnBlueRect), viewRows * 15, viewColumns * 15);
     }
     return scene;
   }
 
+  // how many rows and columns of cells the window shows
+  int viewRows() {
+    return Math.min(this.rows, VIEW_ROWS);
+  }
+
+  int viewColumns() {
+    return Math.min(this.columns, VIEW_COLUMNS);
+  }
+
+  // is the board too big to show all at once?
+  boolean hasView() {
+    return this.rows > VIEW_ROWS || this.columns > VIEW_COLUMNS;
+  }
+
+  // the minimap, made the first time it's needed, or null if the
+  // whole board fits in the window
+  Minimap minimap() {
+    if (this.minimap == null && this.hasView()) {
+      this.minimap = new Minimap(this);
+    }
+    return this.minimap;
+  }
+
+  // how big the scene is, not counting the strip for the clock and flags
+  // below it: the cells in view, and the minimap beside them if there is one
+  int sceneWidth() {
+    return this.viewRows() * 30 + (this.hasView() ? Minimap.PIXELS + 2 * MINIMAP_MARGIN : 0);
+  }
+
+  int sceneHeight() {
+    return Math.max(this.viewColumns() * 30,
+        this.hasView() ? Minimap.PIXELS + 2 * MINIMAP_MARGIN : 0);
+  }
+
+  // moves the view so its top left cell is (r, c), keeping it on the board
+  void moveView(int r, int c) {
+    this.viewRow = Math.max(0, Math.min(this.rows - this.viewRows(), r));
+    this.viewColumn = Math.max(0, Math.min(this.columns - this.viewColumns(), c));
+  }
+
   // randomize amount of mines
   public void randomizeMines() {
     int m = 0;
     int randRow = rand.nextInt(rows);
     int randColumn = rand.nextInt(columns);
+    IntList positions = new IntList(mineCap);
     while (m < mineCap) {
       if (!board.get(randRow).get(randColumn).hasMine) {
         this.board.get(randRow).get(randColumn).placeMine();
+        positions.add(randRow * columns + randColumn);
         m++;
       }
       randRow = rand.nextInt(rows);
       randColumn = rand.nextInt(columns);
     }
+    this.mines = new MineIndex(positions);
+    // the openings and frontier have to be found again for the new mines
+    this.openings = null;
+    this.frontier = null;
+  }
+
+  // places the mines of a generated board onto this board's cells
+  void placeMines(PackedBoard packed) {
+    IntList positions = new IntList(mineCap);
+    for (int r = 0; r < rows; r++) {
+      ArrayList<Cell> row = this.board.get(r);
+      for (int w = 0; w < packed.wordsPerRow; w++) {
+        long word = packed.mines[r * packed.wordsPerRow + w];
+        while (word != 0) {
+          int c = w * 64 + Long.numberOfTrailingZeros(word);
+          row.get(c).placeMine();
+          positions.add(r * columns + c);
+          word &= word - 1;
+        }
+      }
+    }
+    this.mines = new MineIndex(positions);
+    // the openings and frontier have to be found again for the new mines
+    this.openings = null;
+    this.frontier = null;
+  }
+
+  // moves the mine at index from to the empty cell at index to
+  void moveMine(int from, int to) {
+    if (!this.cellAt(from).hasMine || this.cellAt(to).hasMine) {
+      throw new IllegalArgumentException("Can only move a mine onto an empty cell");
+    }
+    // revealed numbers around either cell can change, so their hash keys
+    // come out before the move and go back in after it
+    IntList touched = this.touchedByMove(from, to);
+    this.flipRevealedKeys(touched);
+    this.cellAt(from).removeMine();
+    this.cellAt(to).placeMine();
+    this.mines.move(from, to);
+    this.flipRevealedKeys(touched);
+    this.openings = null;
+    this.frontier = null;
+    // a hint for the old layout no longer applies
+    this.dropHint();
+    // the numbers the old moves revealed don't match this board anymore
+    this.history.clear();
+  }
+
+  // the two cells of a mine's move and their neighbors, each listed once
+  IntList touchedByMove(int from, int to) {
+    IntList touched = new IntList();
+    for (int i : new int[] {from, to}) {
+      this.addOnce(touched, i);
+      for (int k = 0; k < this.neighborTable.degree(i); k++) {
+        this.addOnce(touched, this.neighborTable.neighbor(i, k));
+      }
+    }
+    return touched;
+  }
+
+  // adds i to a short list unless it's already there
+  void addOnce(IntList list, int i) {
+    for (int k = 0; k < list.size; k++) {
+      if (list.get(k) == i) {
+        return;
+      }
+    }
+    list.add(i);
+  }
+
+  // flips the hash keys of the revealed cells among the given ones
+  void flipRevealedKeys(IntList cells) {
+    for (int k = 0; k < cells.size; k++) {
+      int i = cells.get(k);
+      if (this.cellAt(i).isRevealed()) {
+        this.hash ^= Zobrist.key(this.columns, i, Zobrist.revealedState(this.cellAt(i)));
+      }
+    }
+  }
+
+  // the openings of this board, found once per mine layout
+  OpeningIndex openingIndex() {
+    if (this.openings == null) {
+      this.openings = new OpeningIndex(this);
+    }
+    return this.openings;
+  }
+
+  // the frontier of the game as it stands, found once and then kept
+  // up to date as cells are revealed and covered
+  Frontier frontier() {
+    if (this.frontier == null) {
+      this.frontier = new Frontier(this);
+    }
+    return this.frontier;
+  }
+
+  // reveals the cell at index i, counting it if it's safe
+  void revealIndex(int i) {
+    Cell cell = this.cellAt(i);
+    if (!cell.isRevealed()) {
+      cell.reveal();
+      if (!cell.hasMine) {
+        this.revealedSafe += 1;
+      }
+      this.cellChanged(i, BoardEvents.REVEALED);
+    }
+  }
+
+  // covers the revealed cell at index i again, uncounting it if it's safe
+  void coverIndex(int i) {
+    Cell cell = this.cellAt(i);
+    if (cell.isRevealed()) {
+      cell.cover();
+      if (!cell.hasMine) {
+        this.revealedSafe -= 1;
+      }
+      this.cellChanged(i, BoardEvents.COVERED);
+    }
+  }
+
+  // reveals the cell at (r, c), and the whole opening if it's in one
+  // the first opening clicked finds the openings of the whole layout;
+  // any opening no bigger than a slice comes straight from that list,
+  // and bigger ones spread out from the cell through the reveal
+  // scheduler, a slice per frame
+  void revealCell(int r, int c) {
+    int i = r * this.columns + c;
+    Cell cell = this.cellAt(i);
+    if (cell.hasMine || cell.countMines() > 0) {
+      this.revealIndex(i);
+      return;
+    }
+    OpeningIndex index = this.openingIndex();
+    if (index.regionSize(index.regionOf[i]) <= RevealScheduler.MIN_CELLS) {
+      int region = index.regionOf[i];
+      for (int k = index.regionStart[region]; k < index.regionStart[region + 1]; k++) {
+        this.revealIndex(index.regionCells[k]);
+      }
+    }
+    else {
+      this.reveals.seed(this, i);
+      this.reveals.run(this, this.reveals.sliceNanos);
+    }
+  }
+
+  // reveals more of the openings still pending, for at most budget
+  // nanoseconds (all of them for a negative budget), then checks for a
+  // win and, once they're done, finishes the move they belong to
+  void pumpReveals(long budget) {
+    if (!this.reveals.pending()) {
+      return;
+    }
+    // a lost game reveals nothing more
+    if (this.gameOver) {
+      this.reveals.clear();
+    }
+    else {
+      this.reveals.run(this, budget);
+      this.gameWin();
+    }
+    if (!this.reveals.pending() && this.history.recording) {
+      this.history.commit(this.status());
+    }
   }
 
   // generate board
@@ -279,37 +631,23 @@ class MineSweeper extends World {
     return board;
   }
 
-  // counts the number of mines neighboring a particular cell
-  // and adds it to their list
+  // returns the cell at the given index (row * columns + column)
+  Cell cellAt(int index) {
+    return this.board.get(index / this.columns).get(index % this.columns);
+  }
+
+  // links every cell to its neighbors using the
+  // precomputed neighbor table of this board's topology
   void linkNeighbors() {
+    int[] offsets = this.neighborTable.offsets;
+    int[] indices = this.neighborTable.indices;
     for (int r = 0; r < rows; r++) {
+      ArrayList<Cell> row = board.get(r);
       for (int c = 0; c < columns; c++) {
-
-        Cell cell = board.get(r).get(c);
-
-        if (r > 0) {
-          cell.addNeighbor(board.get(r - 1).get(c));
-        }
-        if (r < rows - 1) {
-          cell.addNeighbor(board.get(r + 1).get(c));
-        }
-        if (c > 0) {
-          cell.addNeighbor(board.get(r).get(c - 1));
-        }
-        if (c < columns - 1) {
-          cell.addNeighbor(board.get(r).get(c + 1));
-        }
-        if (r > 0 && c > 0) {
-          cell.addNeighbor(board.get(r - 1).get(c - 1));
-        }
-        if (r < rows - 1 && c > 0) {
-          cell.addNeighbor(board.get(r + 1).get(c - 1));
-        }
-        if (r > 0 && c < columns - 1) {
-          cell.addNeighbor(board.get(r - 1).get(c + 1));
-        }
-        if (r < rows - 1 && c < columns - 1) {
-          cell.addNeighbor(board.get(r + 1).get(c + 1));
+        int i = r * columns + c;
+        Cell cell = row.get(c);
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+          cell.addNeighbor(this.cellAt(indices[k]));
         }
       }
     }
@@ -318,40 +656,45 @@ class MineSweeper extends World {
   // checks to see if the game has been won
   // if so, sets win boolean to true
   void gameWin() {
-    int target = rows * columns - mineCap;
-    for (int r = 0; r < rows; r++) {
-      for (int c = 0; c < columns; c++) {
-        Cell cell = board.get(r).get(c);
-        if (!cell.hasMine && cell.isRevealed()) {
-          target -= 1;
-        }
-      }
-    }
-    if (target == 0) {
+    if (!this.win && this.revealedSafe == rows * columns - mineCap) {
       this.win = true;
+      this.emit(BoardEvents.WON, -1);
     }
   }
  
 
-  // reveals all the cells if the game is over
+  // reveals all the mines if the game is over
   void gameOver() {
-    for (int r = 0; r < rows; r++) {
-      for (int c = 0; c < columns; c++) {
-        Cell cell = board.get(r).get(c);
+    for (int k = 0; k < this.mines.size; k++) {
+      Cell cell = this.cellAt(this.mines.get(k));
+      if (!cell.isRevealed()) {
         cell.gameReveal();
+        this.cellChanged(this.mines.get(k), BoardEvents.REVEALED);
       }
     }
   }
 
   // timer for how long the game has been running
   public void onTick() {
-    if (!this.gameOver && !this.win) {
-      if (this.seconds > 0 && this.seconds % 59 == 0) {
-        this.seconds = 0;
-        this.minutes += 1;
-      }
-      else {
-        this.seconds += 1;
+    // a frame's worth of any opening still being revealed
+    if (this.reveals.pending()) {
+      this.pumpReveals(this.reveals.sliceNanos);
+      this.flushEvents();
+    }
+    this.collectHint();
+    this.elapsed += this.tickSeconds;
+    // with a little slack, so thirty frames of 1/30 s make a second
+    // even though 1/30 can't be added up exactly
+    while (this.elapsed >= 1 - 1e-9) {
+      this.elapsed -= 1;
+      if (!this.gameOver && !this.win) {
+        if (this.seconds > 0 && this.seconds % 59 == 0) {
+          this.seconds = 0;
+          this.minutes += 1;
+        }
+        else {
+          this.seconds += 1;
+        }
       }
     }
   }
@@ -380,9 +723,12 @@ class MineSweeper extends World {
   void restartGame() {
     this.seconds = 0;
     this.minutes = 0;
+    this.elapsed = 0;
     this.gameOver = false;
     this.win = false;
     this.flagCount = mineCap;
+    this.revealedSafe = 0;
+    this.hash = 0;
     this.board = new ArrayList<ArrayList<Cell>>();
     // fills board with lists of rows and cells
     this.board = this.makeGrid();
@@ -394,72 +740,5207 @@ class MineSweeper extends World {
         cell.neighbors = new ArrayList<Cell>();
       }
     }
-    // links cells to each of their neighbors
-    // and fills their neighbor list
-    this.linkNeighbors();
-    // randomizes the placement of mines
-    this.randomizeMines();
+    // links cells to each of their neighbors
+    // and fills their neighbor list
+    this.linkNeighbors();
+    // randomizes the placement of mines
+    this.randomizeMines();
+    // anything still queued, revealing, or to undo belonged to the old board
+    this.eventCount = 0;
+    this.reveals.clear();
+    this.history.clear();
+    this.clicks = 0;
+    this.dropHint();
+    this.emit(BoardEvents.RESTARTED, -1);
+    this.flushEvents();
+  }
+
+  // handler for mouse clicks clicks
+  public void onMouseClicked(Posn pos, String buttonName) {
+    int cellWidth = 30;
+    int cellHeight = 30;
+    // a click on the minimap centers the view on the block clicked
+    Minimap map = this.minimap();
+    if (map != null && pos.x >= this.viewRows() * cellWidth) {
+      int target = map.jumpTarget(0, pos.x - this.viewRows() * cellWidth - MINIMAP_MARGIN,
+          pos.y - MINIMAP_MARGIN);
+      if (target >= 0) {
+        this.moveView(target / this.columns - this.viewRows() / 2,
+            target % this.columns - this.viewColumns() / 2);
+      }
+      return;
+    }
+    // clicks below the cells in view don't reach the cells past them
+    if (map != null && pos.y >= this.viewColumns() * cellHeight) {
+      return;
+    }
+    int r = this.viewRow + Math.floorDiv(pos.x, cellWidth);
+    int c = this.viewColumn + Math.floorDiv(pos.y, cellHeight);
+    if (buttonName.equals("LeftButton")) {
+      this.applyMove(new Move(MoveKind.REVEAL, r, c));
+    }
+    else if (buttonName.equals("RightButton")) {
+      this.applyMove(new Move(MoveKind.FLAG, r, c));
+    }
+    this.flushEvents();
+  }
+
+  // applies one move to the board
+  void applyMove(Move move) {
+    int r = move.row;
+    int c = move.column;
+    // conditions where moves shouldn't be registered
+    // gameOver, win, or out of bounds
+    if (this.gameOver || this.win || r < 0 || r > this.rows - 1 || c < 0 
+        || c > this.columns - 1) {
+      return;
+    }
+    int i = r * this.columns + c;
+    this.clicks += 1;
+    // moves made while an opening is still being revealed are undone
+    // along with it
+    if (!this.history.recording) {
+      this.history.begin(this.status());
+    }
+    if (move.kind == MoveKind.FLAG) {
+      this.toggleFlag(i);
+    }
+    else if (move.kind == MoveKind.REVEAL) {
+      this.press(i);
+    }
+    else {
+      this.chord(i);
+    }
+    if (!this.reveals.pending()) {
+      this.history.commit(this.status());
+    }
+  }
+
+  // takes back the last move, touching only the cells it changed;
+  // false if there is nothing to undo
+  boolean undo() {
+    this.pumpReveals(-1);
+    int[] step = this.history.undo();
+    if (step == null) {
+      return false;
+    }
+    // last change first
+    for (int k = step.length - 1; k > 0; k--) {
+      int i = MoveHistory.index(step[k]);
+      if (MoveHistory.kind(step[k]) == BoardEvents.REVEALED) {
+        this.coverIndex(i);
+      }
+      else {
+        // a flag placed is removed, a flag removed is put back
+        this.toggleFlag(i);
+      }
+    }
+    this.setStatus(MoveHistory.before(step[0]));
+    this.flushEvents();
+    return true;
+  }
+
+  // makes the last undone move again; false if there is nothing to redo
+  boolean redo() {
+    this.pumpReveals(-1);
+    int[] step = this.history.redo();
+    if (step == null) {
+      return false;
+    }
+    for (int k = 1; k < step.length; k++) {
+      int i = MoveHistory.index(step[k]);
+      if (MoveHistory.kind(step[k]) == BoardEvents.REVEALED) {
+        this.revealIndex(i);
+      }
+      else {
+        this.toggleFlag(i);
+      }
+    }
+    this.setStatus(MoveHistory.after(step[0]));
+    this.flushEvents();
+    return true;
+  }
+
+  // how the game stands, as MoveHistory keeps it
+  int status() {
+    if (this.gameOver) {
+      return MoveHistory.LOST;
+    }
+    else if (this.win) {
+      return MoveHistory.WON;
+    }
+    else {
+      return MoveHistory.PLAYING;
+    }
+  }
+
+  // puts the game back to the given status, telling the listeners
+  void setStatus(int status) {
+    if (status == this.status()) {
+      return;
+    }
+    this.gameOver = status == MoveHistory.LOST;
+    this.win = status == MoveHistory.WON;
+    if (this.gameOver) {
+      this.emit(BoardEvents.LOST, -1);
+    }
+    else if (this.win) {
+      this.emit(BoardEvents.WON, -1);
+    }
+    else {
+      this.emit(BoardEvents.RESUMED, -1);
+    }
+  }
+
+  // applies moves in order until the game ends, and returns just the
+  // cells that changed along with how the game stands
+  MoveResult applyMoves(ArrayList<Move> moves) {
+    this.changes = new IntList();
+    int applied = 0;
+    for (Move move : moves) {
+      // stop at the first loss (or win)
+      if (this.gameOver || this.win) {
+        break;
+      }
+      this.applyMove(move);
+      // moves in a batch see the whole of every opening
+      this.pumpReveals(-1);
+      applied += 1;
+    }
+    MoveResult result = new MoveResult(this, this.changes, applied);
+    this.changes = null;
+    this.flushEvents();
+    return result;
+  }
+
+  // notes that the cell at index i changed, for the batch being
+  // applied and for the listeners
+  void cellChanged(int i, int kind) {
+    if (kind == BoardEvents.FLAGGED || kind == BoardEvents.UNFLAGGED) {
+      this.hash ^= Zobrist.key(this.columns, i, Zobrist.FLAGGED);
+    }
+    else {
+      // revealing and covering a cell flip the same key
+      this.hash ^= Zobrist.key(this.columns, i, Zobrist.revealedState(this.cellAt(i)));
+    }
+    if (this.changes != null) {
+      this.changes.add(i);
+    }
+    // flags don't change what's known, so only reveals touch the frontier
+    if (kind == BoardEvents.REVEALED || kind == BoardEvents.COVERED) {
+      if (this.frontier != null) {
+        this.frontier.refresh(this, i);
+      }
+      // a hint for the old position no longer applies
+      this.dropHint();
+    }
+    this.history.record(i, kind);
+    this.emit(kind, i);
+  }
+
+  // adds a listener that hears about every change to this game
+  void addListener(IBoardListener listener) {
+    this.listeners.add(listener);
+  }
+
+  // stops a listener from hearing about changes
+  void removeListener(IBoardListener listener) {
+    this.listeners.remove(listener);
+  }
+
+  // queues an event for the listeners, if there are any
+  void emit(int kind, int index) {
+    if (this.listeners.isEmpty()) {
+      return;
+    }
+    if (this.eventCount == this.events.length) {
+      this.events = Arrays.copyOf(this.events, this.eventCount * 2);
+    }
+    this.events[this.eventCount] = BoardEvents.encode(kind, index);
+    this.eventCount += 1;
+  }
+
+  // hands the events of the operation that just finished to every
+  // listener as one batch
+  void flushEvents() {
+    if (this.eventCount == 0) {
+      return;
+    }
+    for (IBoardListener listener : this.listeners) {
+      listener.onEvents(this.events, this.eventCount);
+    }
+    this.eventCount = 0;
+  }
+
+  // places or removes a flag on the cell at index i
+  void toggleFlag(int i) {
+    Cell cell = this.cellAt(i);
+    // placing a flag
+    if (!cell.hasFlag() && !cell.isRevealed()) {
+      cell.placeFlag();
+      this.flagCount -= 1;
+      this.cellChanged(i, BoardEvents.FLAGGED);
+    }
+    // removing a flag
+    else if (cell.hasFlag()) {
+      cell.removeFlag();
+      this.flagCount += 1;
+      this.cellChanged(i, BoardEvents.UNFLAGGED);
+    }
+  }
+
+  // when a cell is pressed
+  void press(int i) {
+    Cell cell = this.cellAt(i);
+    if (cell.hasFlag()) {
+      return;
+    }
+    this.revealCell(i / this.columns, i % this.columns);
+    // when a mine is pressed
+    if (cell.hasMine) {
+      this.lose();
+    }
+    else {
+      this.gameWin();
+    }
+  }
+
+  // reveals every unflagged neighbor of a revealed number once
+  // as many flags as its number surround it
+  void chord(int i) {
+    Cell cell = this.cellAt(i);
+    if (!cell.isRevealed() || cell.hasMine) {
+      return;
+    }
+    int flags = 0;
+    for (Cell n : cell.neighbors) {
+      if (n.hasFlag()) {
+        flags += 1;
+      }
+    }
+    if (flags != cell.countMines()) {
+      return;
+    }
+    boolean hitMine = false;
+    int[] offsets = this.neighborTable.offsets;
+    for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+      int j = this.neighborTable.indices[k];
+      Cell n = this.cellAt(j);
+      if (!n.hasFlag() && !n.isRevealed()) {
+        this.revealCell(j / this.columns, j % this.columns);
+        hitMine = hitMine || n.hasMine;
+      }
+    }
+    if (hitMine) {
+      this.lose();
+    }
+    else {
+      this.gameWin();
+    }
+  }
+
+  // the mines of this board, packed
+  PackedBoard packedMines() {
+    PackedBoard packed = new PackedBoard(this.rows, this.columns);
+    for (int k = 0; k < this.mines.size; k++) {
+      packed.placeMine(this.mines.get(k) / this.columns, this.mines.get(k) % this.columns);
+    }
+    return packed;
+  }
+
+  // what the player can see of every cell: HIDDEN for covered cells
+  // (flagged or not), the number of a revealed cell, or MINE for a
+  // revealed mine
+  int[] visibleState() {
+    int[] state = new int[this.rows * this.columns];
+    for (int r = 0; r < this.rows; r++) {
+      ArrayList<Cell> row = this.board.get(r);
+      for (int c = 0; c < this.columns; c++) {
+        Cell cell = row.get(c);
+        if (!cell.isRevealed()) {
+          state[r * this.columns + c] = FrontierSolver.HIDDEN;
+        }
+        else if (cell.hasMine) {
+          state[r * this.columns + c] = FrontierSolver.MINE;
+        }
+        else {
+          state[r * this.columns + c] = cell.countMines();
+        }
+      }
+    }
+    return state;
+  }
+
+  // ends the game after a mine is pressed
+  void lose() {
+    this.gameOver = true;
+    // what's left of any opening stays covered
+    this.reveals.clear();
+    this.gameOver();
+    this.emit(BoardEvents.LOST, -1);
+  }
+  
+  // for restarting the game
+  public void onKeyEvent(String key) {
+    if (key.equals("r")) {
+      this.restartGame();
+    }
+    // takes back the last move, or makes it again
+    else if (key.equals("u")) {
+      this.undo();
+    }
+    else if (key.equals("y")) {
+      this.redo();
+    }
+    else if (key.equals("h")) {
+      this.requestHint();
+    }
+    // the arrows move the view half a view at a time
+    else if (key.equals("left") || key.equals("right")) {
+      int by = Math.max(1, this.viewRows() / 2);
+      this.moveView(this.viewRow + (key.equals("left") ? -by : by), this.viewColumn);
+    }
+    else if (key.equals("up") || key.equals("down")) {
+      int by = Math.max(1, this.viewColumns() / 2);
+      this.moveView(this.viewRow, this.viewColumn + (key.equals("up") ? -by : by));
+    }
+  }
+
+  // asks for the safest next move: shown at once if this position has
+  // been analyzed before, otherwise once the background analysis is done
+  // (picked up by onTick, so no frame waits for it)
+  void requestHint() {
+    // an opening still being revealed would make the position stale
+    // before the analysis finished
+    if (this.gameOver || this.win || this.reveals.pending()) {
+      return;
+    }
+    if (this.hints == null) {
+      this.hints = new HintService();
+    }
+    this.hint = this.hints.request(this);
+  }
+
+  // shows the hint the background analysis found, if it's done
+  void collectHint() {
+    if (this.hints != null && this.hint == null) {
+      this.hint = this.hints.poll();
+    }
+  }
+
+  // hides the hint and stops any analysis of the position before
+  void dropHint() {
+    this.hint = null;
+    if (this.hints != null) {
+      this.hints.cancel();
+    }
+  }
+}
+
+// to represent the shape of a board: which cells count as
+// neighbors of which
+interface ITopology {
+  // the most neighbors any one cell can have
+  int maxDegree();
+
+  // writes the indices (row * columns + column) of the neighbors of the
+  // cell at (r, c) into out and returns how many there are
+  int neighbors(int r, int c, int rows, int columns, int[] out);
+
+  // counts the mines around the cell at (r, c) of a packed board
+  int countMines(PackedBoard packed, int r, int c);
+
+  // is this the classic board, whose neighbors a Bitboard can count?
+  boolean isSquare();
+}
+
+// to represent a topology given by a fixed list of (row, column) offsets
+abstract class ATopology implements ITopology {
+  int[] rowOffsets;
+  int[] columnOffsets;
+  // do the edges of the board wrap around?
+  boolean wraps;
+
+  ATopology(int[] rowOffsets, int[] columnOffsets, boolean wraps) {
+    this.rowOffsets = rowOffsets;
+    this.columnOffsets = columnOffsets;
+    this.wraps = wraps;
+  }
+
+  // the most neighbors any one cell can have
+  public int maxDegree() {
+    return this.rowOffsets.length;
+  }
+
+  // writes the neighbors of (r, c) into out, skipping cells off the
+  // board (or wrapping them around) and any cell reached twice
+  public int neighbors(int r, int c, int rows, int columns, int[] out) {
+    return this.offsetNeighbors(r, c, rows, columns, this.rowOffsets, this.columnOffsets, out);
+  }
+
+  // counts the mines around the cell at (r, c) of a packed board
+  public int countMines(PackedBoard packed, int r, int c) {
+    return this.offsetCount(packed, r, c, this.rowOffsets, this.columnOffsets);
+  }
+
+  // only the classic board lines up with a Bitboard's shifted words
+  public boolean isSquare() {
+    return false;
+  }
+
+  // counts the mines in the cells reached from (r, c) by the given offsets,
+  // reading the mine bits directly instead of building a neighbor list
+  int offsetCount(PackedBoard packed, int r, int c, int[] dr, int[] dc) {
+    int rows = packed.rows;
+    int columns = packed.columns;
+    // tiny wrapped boards reach some cells twice, so they need the deduplicated list
+    if (this.wraps && (rows < 5 || columns < 5)) {
+      int[] out = new int[dr.length];
+      int n = this.offsetNeighbors(r, c, rows, columns, dr, dc, out);
+      int m = 0;
+      for (int k = 0; k < n; k++) {
+        if (packed.hasMine(out[k] / columns, out[k] % columns)) {
+          m += 1;
+        }
+      }
+      return m;
+    }
+    int m = 0;
+    for (int k = 0; k < dr.length; k++) {
+      int nr = r + dr[k];
+      int nc = c + dc[k];
+      if (this.wraps) {
+        nr = nr < 0 ? nr + rows : (nr >= rows ? nr - rows : nr);
+        nc = nc < 0 ? nc + columns : (nc >= columns ? nc - columns : nc);
+      }
+      else if (nr < 0 || nr >= rows || nc < 0 || nc >= columns) {
+        continue;
+      }
+      if (packed.hasMine(nr, nc)) {
+        m += 1;
+      }
+    }
+    return m;
+  }
+
+  // writes the neighbors of (r, c) reached by the given offsets into out
+  int offsetNeighbors(int r, int c, int rows, int columns, int[] dr, int[] dc, int[] out) {
+    int n = 0;
+    for (int k = 0; k < dr.length; k++) {
+      int nr = r + dr[k];
+      int nc = c + dc[k];
+      if (this.wraps) {
+        nr = Math.floorMod(nr, rows);
+        nc = Math.floorMod(nc, columns);
+      }
+      else if (nr < 0 || nr >= rows || nc < 0 || nc >= columns) {
+        continue;
+      }
+      int index = nr * columns + nc;
+      // small boards can wrap back onto the cell itself or reach
+      // the same neighbor from two directions
+      boolean seen = nr == r && nc == c;
+      for (int j = 0; j < n && !seen; j++) {
+        seen = out[j] == index;
+      }
+      if (!seen) {
+        out[n] = index;
+        n += 1;
+      }
+    }
+    return n;
+  }
+}
+
+// the classic board: all 8 surrounding cells, edges don't wrap
+class SquareTopology extends ATopology {
+  SquareTopology() {
+    super(new int[] {-1, 1, 0, 0, -1, 1, -1, 1}, 
+        new int[] {0, 0, -1, 1, -1, -1, 1, 1}, false);
+  }
+
+  // the 8 neighbors without wrapping are exactly what a Bitboard counts
+  public boolean isSquare() {
+    return true;
+  }
+}
+
+// all 8 surrounding cells, edges wrap around onto the other side
+class TorusTopology extends ATopology {
+  TorusTopology() {
+    super(new int[] {-1, 1, 0, 0, -1, 1, -1, 1}, 
+        new int[] {0, 0, -1, 1, -1, -1, 1, 1}, true);
+  }
+}
+
+// only the 4 cells sharing an edge count as neighbors
+class OrthogonalTopology extends ATopology {
+  OrthogonalTopology() {
+    super(new int[] {-1, 1, 0, 0}, new int[] {0, 0, -1, 1}, false);
+  }
+}
+
+// the cells a chess knight could jump to count as neighbors
+class KnightTopology extends ATopology {
+  KnightTopology() {
+    super(new int[] {-2, -2, -1, -1, 1, 1, 2, 2}, 
+        new int[] {-1, 1, -2, 2, -2, 2, -1, 1}, false);
+  }
+}
+
+// a hexagonal board where every odd row is shifted half a cell,
+// so each cell touches 6 others
+class HexTopology extends ATopology {
+  // offsets used by the shifted (odd) rows
+  int[] oddRowOffsets;
+  int[] oddColumnOffsets;
+
+  HexTopology() {
+    super(new int[] {0, 0, -1, -1, 1, 1}, new int[] {-1, 1, -1, 0, -1, 0}, false);
+    this.oddRowOffsets = new int[] {0, 0, -1, -1, 1, 1};
+    this.oddColumnOffsets = new int[] {-1, 1, 0, 1, 0, 1};
+  }
+
+  // even and odd rows touch different columns of the rows around them
+  public int neighbors(int r, int c, int rows, int columns, int[] out) {
+    if (r % 2 == 0) {
+      return this.offsetNeighbors(r, c, rows, columns, this.rowOffsets, this.columnOffsets, out);
+    }
+    else {
+      return this.offsetNeighbors(r, c, rows, columns, 
+          this.oddRowOffsets, this.oddColumnOffsets, out);
+    }
+  }
+
+  // even and odd rows touch different columns of the rows around them
+  public int countMines(PackedBoard packed, int r, int c) {
+    if (r % 2 == 0) {
+      return this.offsetCount(packed, r, c, this.rowOffsets, this.columnOffsets);
+    }
+    else {
+      return this.offsetCount(packed, r, c, this.oddRowOffsets, this.oddColumnOffsets);
+    }
+  }
+}
+
+// to represent the neighbors of every cell of a board, worked out once
+// so counting and flooding never have to check for edges again
+// the neighbors of cell i are indices[offsets[i]] up to indices[offsets[i + 1]]
+class NeighborTable {
+  int rows;
+  int columns;
+  int[] offsets;
+  int[] indices;
+
+  NeighborTable(ITopology topology, int rows, int columns) {
+    this.rows = rows;
+    this.columns = columns;
+    int size = rows * columns;
+    int[] buffer = new int[topology.maxDegree()];
+    this.offsets = new int[size + 1];
+    int[] flat = new int[size * topology.maxDegree()];
+    int n = 0;
+    for (int r = 0; r < rows; r++) {
+      for (int c = 0; c < columns; c++) {
+        int count = topology.neighbors(r, c, rows, columns, buffer);
+        System.arraycopy(buffer, 0, flat, n, count);
+        n += count;
+        this.offsets[r * columns + c + 1] = n;
+      }
+    }
+    // edge cells have fewer neighbors, so trim the unused tail
+    this.indices = Arrays.copyOf(flat, n);
+  }
+
+  // how many neighbors the cell at index i has
+  int degree(int i) {
+    return this.offsets[i + 1] - this.offsets[i];
+  }
+
+  // the k-th neighbor of the cell at index i
+  int neighbor(int i, int k) {
+    return this.indices[this.offsets[i] + k];
+  }
+}
+
+// to represent a board's mines and neighbor counts packed into flat
+// arrays instead of Cells, so even huge boards fit in memory
+// every row starts on a fresh word of the mine bits, so different
+// rows can be written at the same time without sharing a word
+class PackedBoard {
+  int rows;
+  int columns;
+  // how many longs (64 cells each) make up one row
+  int wordsPerRow;
+  // one bit per cell, set if the cell has a mine
+  long[] mines;
+  // how many of each cell's neighbors have mines
+  byte[] counts;
+
+  PackedBoard(int rows, int columns) {
+    this.rows = rows;
+    this.columns = columns;
+    this.wordsPerRow = (columns + 63) / 64;
+    this.mines = new long[rows * this.wordsPerRow];
+    this.counts = new byte[rows * columns];
+  }
+
+  // does the cell at (r, c) have a mine?
+  boolean hasMine(int r, int c) {
+    return (this.mines[r * this.wordsPerRow + (c >>> 6)] & (1L << c)) != 0;
+  }
+
+  // places a mine at (r, c)
+  void placeMine(int r, int c) {
+    this.mines[r * this.wordsPerRow + (c >>> 6)] |= 1L << c;
+  }
+
+  // removes the mine at (r, c)
+  void removeMine(int r, int c) {
+    this.mines[r * this.wordsPerRow + (c >>> 6)] &= ~(1L << c);
+  }
+
+  // how many mines neighbor the cell at (r, c)
+  int countMines(int r, int c) {
+    return this.counts[r * this.columns + c];
+  }
+
+  // which cells have mines, one boolean per cell index
+  boolean[] mineArray() {
+    boolean[] mine = new boolean[this.rows * this.columns];
+    for (int r = 0; r < this.rows; r++) {
+      for (int c = 0; c < this.columns; c++) {
+        mine[r * this.columns + c] = this.hasMine(r, c);
+      }
+    }
+    return mine;
+  }
+
+  // how many mines are on the whole board
+  int mineCount() {
+    int m = 0;
+    for (long word : this.mines) {
+      m += Long.bitCount(word);
+    }
+    return m;
+  }
+}
+
+// to generate huge boards in parallel: the board is split into stripes
+// of rows, every stripe gets its own random stream split off a single
+// seed, and the stripes are filled in on a fork/join pool
+// stripe sizes depend only on the board's size, never on how many cores
+// there are, so a seed always gives the same board
+// layouts are not exactly uniform: once both mines and empty cells number
+// more than 64, a stripe's share of the mines comes from a normal
+// approximation of the hypergeometric draw, so how many mines each stripe
+// gets is very slightly off; where they go within a stripe is uniform
+class BoardGenerator {
+  // roughly how many cells go in one stripe
+  static final int STRIPE_CELLS = 1 << 16;
+
+  ITopology topology;
+  ForkJoinPool pool;
+
+  BoardGenerator(ITopology topology, ForkJoinPool pool) {
+    this.topology = topology;
+    this.pool = pool;
+  }
+
+  BoardGenerator(ITopology topology) {
+    this(topology, ForkJoinPool.commonPool());
+  }
+
+  // generates a board with exactly mineCap mines, laid out by the seed
+  PackedBoard generate(int rows, int columns, int mineCap, long seed) {
+    if (mineCap < 0 || (long) rows * columns < mineCap) {
+      throw new IllegalArgumentException("Cannot fit " + mineCap + " mines on a " 
+          + rows + " x " + columns + " board");
+    }
+    PackedBoard packed = new PackedBoard(rows, columns);
+    int stripeRows = Math.max(1, STRIPE_CELLS / Math.max(1, columns));
+    int stripes = (rows + stripeRows - 1) / stripeRows;
+    // the only sequential part: decide how many mines each stripe gets
+    // and split off its random stream, always in the same order
+    SplittableRandom root = new SplittableRandom(seed);
+    int[] quotas = new int[stripes];
+    SplittableRandom[] streams = new SplittableRandom[stripes];
+    long cellsLeft = (long) rows * columns;
+    long minesLeft = mineCap;
+    for (int i = 0; i < stripes; i++) {
+      long stripeCells = (long) (Math.min(rows, (i + 1) * stripeRows) - i * stripeRows) * columns;
+      quotas[i] = (int) this.minesInStripe(root, cellsLeft, minesLeft, stripeCells);
+      streams[i] = root.split();
+      cellsLeft -= stripeCells;
+      minesLeft -= quotas[i];
+    }
+    // every stripe's mines have to be down before any counting starts,
+    // since counts read the rows of the stripes next door
+    this.pool.invoke(new StripeTask(packed, this.topology, stripeRows, 0, stripes,
+        quotas, streams, false));
+    this.pool.invoke(new StripeTask(packed, this.topology, stripeRows, 0, stripes,
+        quotas, streams, true));
+    return packed;
+  }
+
+  // fills in the neighbor counts of a board whose mines came from
+  // somewhere else, such as a file
+  void count(PackedBoard packed) {
+    int stripeRows = Math.max(1, STRIPE_CELLS / Math.max(1, packed.columns));
+    int stripes = (packed.rows + stripeRows - 1) / stripeRows;
+    if (stripes > 0) {
+      this.pool.invoke(new StripeTask(packed, this.topology, stripeRows, 0, stripes,
+          null, null, true));
+    }
+  }
+
+  // how many of the minesLeft mines, spread over cellsLeft cells, land in
+  // the next stripeCells cells (a hypergeometric draw)
+  long minesInStripe(SplittableRandom rand, long cellsLeft, long minesLeft, long stripeCells) {
+    long low = Math.max(0, minesLeft - (cellsLeft - stripeCells));
+    long high = Math.min(stripeCells, minesLeft);
+    if (low == high) {
+      return low;
+    }
+    // drawing the rarer of mines or empty cells one by one is exact
+    long rare = Math.min(minesLeft, cellsLeft - minesLeft);
+    if (rare <= 64) {
+      long hits = 0;
+      long cells = cellsLeft;
+      long inStripe = stripeCells;
+      for (long k = 0; k < rare; k++) {
+        if (rand.nextLong(cells) < inStripe) {
+          hits += 1;
+          inStripe -= 1;
+        }
+        cells -= 1;
+      }
+      return minesLeft <= cellsLeft - minesLeft ? hits : stripeCells - hits;
+    }
+    // otherwise a normal approximation, which is close but not exact
+    // (see the class comment)
+    double p = (double) minesLeft / cellsLeft;
+    double mean = stripeCells * p;
+    double variance = mean * (1 - p) * (cellsLeft - stripeCells) / Math.max(1, cellsLeft - 1);
+    long draw = Math.round(mean + Math.sqrt(variance) * this.gaussian(rand));
+    return Math.max(low, Math.min(high, draw));
+  }
+
+  // a standard normal value (Box-Muller)
+  double gaussian(SplittableRandom rand) {
+    double u = 1.0 - rand.nextDouble();
+    double v = rand.nextDouble();
+    return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+  }
+}
+
+// to place the mines of, or count the neighbors for, a range of stripes,
+// splitting the range in half until each task has one stripe
+class StripeTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+  PackedBoard packed;
+  ITopology topology;
+  int stripeRows;
+  int from;
+  int to;
+  int[] quotas;
+  SplittableRandom[] streams;
+  // true when counting neighbors, false when placing mines
+  boolean counting;
+
+  StripeTask(PackedBoard packed, ITopology topology, int stripeRows, int from, int to,
+      int[] quotas, SplittableRandom[] streams, boolean counting) {
+    this.packed = packed;
+    this.topology = topology;
+    this.stripeRows = stripeRows;
+    this.from = from;
+    this.to = to;
+    this.quotas = quotas;
+    this.streams = streams;
+    this.counting = counting;
+  }
+
+  // works on one stripe, or splits the range between two tasks
+  protected void compute() {
+    if (this.to - this.from == 1) {
+      int firstRow = this.from * this.stripeRows;
+      int lastRow = Math.min(this.packed.rows, firstRow + this.stripeRows);
+      if (this.counting) {
+        this.countStripe(firstRow, lastRow);
+      }
+      else {
+        this.placeStripe(firstRow, lastRow, this.quotas[this.from], this.streams[this.from]);
+      }
+    }
+    else {
+      int mid = (this.from + this.to) >>> 1;
+      invokeAll(new StripeTask(this.packed, this.topology, this.stripeRows, this.from, mid,
+          this.quotas, this.streams, this.counting),
+          new StripeTask(this.packed, this.topology, this.stripeRows, mid, this.to,
+              this.quotas, this.streams, this.counting));
+    }
+  }
+
+  // places exactly quota mines at random in rows firstRow up to lastRow
+  void placeStripe(int firstRow, int lastRow, int quota, SplittableRandom rand) {
+    int columns = this.packed.columns;
+    int cells = (lastRow - firstRow) * columns;
+    // when most cells get mines it's quicker to fill the stripe
+    // and pick out the empty cells instead
+    boolean fill = quota > cells / 2;
+    if (fill) {
+      for (int r = firstRow; r < lastRow; r++) {
+        for (int c = 0; c < columns; c++) {
+          this.packed.placeMine(r, c);
+        }
+      }
+    }
+    int m = 0;
+    int target = fill ? cells - quota : quota;
+    while (m < target) {
+      int cell = rand.nextInt(cells);
+      int r = firstRow + cell / columns;
+      int c = cell % columns;
+      if (this.packed.hasMine(r, c) == fill) {
+        if (fill) {
+          this.packed.removeMine(r, c);
+        }
+        else {
+          this.packed.placeMine(r, c);
+        }
+        m++;
+      }
+    }
+  }
+
+  // counts the mines around every cell in rows firstRow up to lastRow
+  void countStripe(int firstRow, int lastRow) {
+    int columns = this.packed.columns;
+    for (int r = firstRow; r < lastRow; r++) {
+      for (int c = 0; c < columns; c++) {
+        this.packed.counts[r * columns + c] = (byte) this.topology.countMines(this.packed, r, c);
+      }
+    }
+  }
+
+}
+
+// to read and write mine layouts in two formats, streaming through one
+// small buffer straight to and from packed boards:
+// - text: one line per row, * (or x) for a mine and . (or a digit) for
+//   an empty cell; lines starting with # are comments
+// - binary: "MSB1", then rows, columns and the number of mines as big
+//   endian ints, then each row as little endian longs of 64 cells,
+//   exactly as PackedBoard keeps them
+class BoardIO {
+  static final int MAGIC = 0x4D534231;
+  static final int BUFFER_BYTES = 1 << 16;
+
+  // the board in the file, in whichever format it's in, with its
+  // neighbor counts filled in for the given topology
+  static PackedBoard read(Path file, ITopology topology) throws IOException {
+    PackedBoard packed;
+    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(4);
+      while (magic.hasRemaining() && in.read(magic) >= 0) {
+        // reads until there are four bytes or the file ends
+      }
+      in.position(0);
+      if (!magic.hasRemaining() && magic.getInt(0) == MAGIC) {
+        packed = readBinary(in);
+      }
+      else {
+        packed = readText(in);
+      }
+    }
+    new BoardGenerator(topology).count(packed);
+    return packed;
+  }
+
+  // a game on the board in the file
+  static MineSweeper load(Path file, ITopology topology) throws IOException {
+    return new MineSweeper(read(file, topology), topology);
+  }
+
+  // reads a text grid: once to find its size, then again to place its mines
+  static PackedBoard readText(FileChannel in) throws IOException {
+    TextGridScanner size = new TextGridScanner(null);
+    size.scan(in);
+    if (size.rows == 0) {
+      throw new IOException("There is no board in the file");
+    }
+    PackedBoard packed = new PackedBoard(size.rows, size.columns);
+    in.position(0);
+    new TextGridScanner(packed).scan(in);
+    return packed;
+  }
+
+  // reads a binary layout, one row of words at a time
+  static PackedBoard readBinary(FileChannel in) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(16);
+    fill(in, header);
+    int rows = header.getInt(4);
+    int columns = header.getInt(8);
+    int mineCount = header.getInt(12);
+    if (rows < 1 || columns < 1 || (long) rows * columns > Integer.MAX_VALUE) {
+      throw new IOException("A board can't be " + rows + " x " + columns);
+    }
+    PackedBoard packed = new PackedBoard(rows, columns);
+    // the bits past the last column of a row have to be clear
+    long lastWord = columns % 64 == 0 ? -1L : (1L << columns) - 1;
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.limit(0);
+    for (int w = 0; w < packed.mines.length; w++) {
+      if (buffer.remaining() < 8) {
+        buffer.compact();
+        long bytesLeft = (packed.mines.length - w) * 8L;
+        buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + bytesLeft));
+        fill(in, buffer);
+        buffer.flip();
+      }
+      long word = buffer.getLong();
+      if (w % packed.wordsPerRow == packed.wordsPerRow - 1 && (word & ~lastWord) != 0) {
+        throw new IOException("Row " + w / packed.wordsPerRow + " has mines past its end");
+      }
+      packed.mines[w] = word;
+    }
+    if (packed.mineCount() != mineCount) {
+      throw new IOException("Expected " + mineCount + " mines but found "
+          + packed.mineCount());
+    }
+    return packed;
+  }
+
+  // reads until the buffer is full, or fails if the file ends first
+  static void fill(FileChannel in, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (in.read(buffer) < 0) {
+        throw new IOException("The file ends too early");
+      }
+    }
+  }
+
+  // fills the buffer from the given position of the file, without
+  // moving the file's own position
+  static void fill(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = in.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("The file ends too early");
+      }
+      position += read;
+    }
+  }
+
+  // writes the board's mines as a text grid
+  static void writeText(PackedBoard packed, Path file) throws IOException {
+    try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+      for (int r = 0; r < packed.rows; r++) {
+        for (int c = 0; c <= packed.columns; c++) {
+          if (!buffer.hasRemaining()) {
+            drain(out, buffer);
+          }
+          if (c == packed.columns) {
+            buffer.put((byte) '\n');
+          }
+          else {
+            buffer.put(packed.hasMine(r, c) ? (byte) '*' : (byte) '.');
+          }
+        }
+      }
+      drain(out, buffer);
+    }
+  }
+
+  // writes the board's mines in the binary format
+  static void writeBinary(PackedBoard packed, Path file) throws IOException {
+    try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+      buffer.putInt(MAGIC).putInt(packed.rows).putInt(packed.columns)
+          .putInt(packed.mineCount());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      for (long word : packed.mines) {
+        if (buffer.remaining() < 8) {
+          drain(out, buffer);
+        }
+        buffer.putLong(word);
+      }
+      drain(out, buffer);
+    }
+  }
+
+  // writes out everything in the buffer and empties it
+  static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+    buffer.clear();
+  }
+}
+
+// to go through a text grid one byte at a time, finding its size and,
+// given a packed board, placing its mines
+class TextGridScanner {
+  PackedBoard packed;
+  int rows;
+  // the length of every row, or -1 before the first row ends
+  int columns;
+  // how far along the current line is
+  int column;
+  boolean comment;
+
+  TextGridScanner(PackedBoard packed) {
+    this.packed = packed;
+    this.columns = -1;
+  }
+
+  // goes through the whole channel, from where it is
+  void scan(FileChannel in) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BoardIO.BUFFER_BYTES);
+    while (in.read(buffer) >= 0) {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        this.accept(buffer.get());
+      }
+      buffer.clear();
+    }
+    // the last line might not end in a newline
+    this.accept((byte) '\n');
+  }
+
+  // takes the next byte of the grid
+  void accept(byte b) throws IOException {
+    if (b == '\n') {
+      this.endLine();
+    }
+    else if (b == '\r' || this.comment) {
+      return;
+    }
+    else if (b == '#' && this.column == 0) {
+      this.comment = true;
+    }
+    else if (b == '*' || b == 'x' || b == 'X') {
+      if (this.packed != null) {
+        this.packed.placeMine(this.rows, this.column);
+      }
+      this.column += 1;
+    }
+    else if (b == '.' || (b >= '0' && b <= '8')) {
+      this.column += 1;
+    }
+    else {
+      throw new IOException("Unexpected '" + (char) b + "' in row " + this.rows);
+    }
+  }
+
+  // finishes a line: a comment or blank line is skipped, and every
+  // other line is a row as long as the first
+  void endLine() throws IOException {
+    if (this.column > 0) {
+      if (this.columns == -1) {
+        this.columns = this.column;
+      }
+      else if (this.column != this.columns) {
+        throw new IOException("Row " + this.rows + " has " + this.column
+            + " cells instead of " + this.columns);
+      }
+      this.rows += 1;
+    }
+    this.comment = false;
+    this.column = 0;
+  }
+}
+
+// to represent the mine layer of a square board as bits, one long per
+// 64 cells of a row, for analysis that looks at every cell at once
+// (3BV, openings, checking generated boards)
+class Bitboard {
+  int rows;
+  int columns;
+  // how many longs make up one row, every row starts on a fresh word
+  int wordsPerRow;
+  long[] mines;
+
+  // shares the mine bits of a packed board
+  Bitboard(PackedBoard packed) {
+    this.rows = packed.rows;
+    this.columns = packed.columns;
+    this.wordsPerRow = packed.wordsPerRow;
+    this.mines = packed.mines;
+  }
+
+  // copies the mines of a board of Cells
+  Bitboard(MineSweeper game) {
+    this(OpeningIndex.minesOf(game), game.rows, game.columns);
+  }
+
+  // packs the mines given as one boolean per cell index
+  Bitboard(boolean[] mine, int rows, int columns) {
+    this.rows = rows;
+    this.columns = columns;
+    this.wordsPerRow = (columns + 63) / 64;
+    this.mines = new long[rows * this.wordsPerRow];
+    for (int r = 0; r < rows; r++) {
+      for (int c = 0; c < columns; c++) {
+        if (mine[r * columns + c]) {
+          this.mines[r * this.wordsPerRow + (c >>> 6)] |= 1L << c;
+        }
+      }
+    }
+  }
+
+  // the word w of row r, or 0 off the top or bottom of the board
+  long word(int r, int w) {
+    if (r < 0 || r >= this.rows) {
+      return 0;
+    }
+    return this.mines[r * this.wordsPerRow + w];
+  }
+
+  // the bits of row r's word w, moved one cell to the right so that each
+  // cell lines up with its neighbor on the left
+  long fromWest(int r, int w) {
+    long carry = w > 0 ? this.word(r, w - 1) >>> 63 : 0;
+    return (this.word(r, w) << 1) | carry;
+  }
+
+  // the bits of row r's word w, moved one cell to the left so that each
+  // cell lines up with its neighbor on the right
+  long fromEast(int r, int w) {
+    long carry = w < this.wordsPerRow - 1 ? this.word(r, w + 1) << 63 : 0;
+    return (this.word(r, w) >>> 1) | carry;
+  }
+
+  // counts the 8 neighbors of every cell 64 cells at a time: the eight
+  // shifted neighbor words go through a tree of bit-sliced adders that
+  // leaves each cell's count spread over four bit planes
+  BitboardCounts countNeighbors() {
+    BitboardCounts result = new BitboardCounts(this);
+    for (int r = 0; r < this.rows; r++) {
+      for (int w = 0; w < this.wordsPerRow; w++) {
+        long n = this.word(r - 1, w);
+        long s = this.word(r + 1, w);
+        long west = this.fromWest(r, w);
+        long east = this.fromEast(r, w);
+        long northWest = this.fromWest(r - 1, w);
+        long northEast = this.fromEast(r - 1, w);
+        long southWest = this.fromWest(r + 1, w);
+        long southEast = this.fromEast(r + 1, w);
+
+        // three adders take the eight inputs down to three ones and three twos
+        long ones0 = n ^ s ^ west;
+        long twos0 = (n & s) | (west & (n ^ s));
+        long ones1 = east ^ northWest ^ northEast;
+        long twos1 = (east & northWest) | (northEast & (east ^ northWest));
+        long ones2 = southWest ^ southEast;
+        long twos2 = southWest & southEast;
+        // add the ones: bit 0 of the count, carrying one more two
+        long bit0 = ones0 ^ ones1 ^ ones2;
+        long twos3 = (ones0 & ones1) | (ones2 & (ones0 ^ ones1));
+        // add the four twos: bit 1, carrying two fours
+        long twosSum = twos0 ^ twos1 ^ twos2;
+        long fours0 = (twos0 & twos1) | (twos2 & (twos0 ^ twos1));
+        long bit1 = twosSum ^ twos3;
+        long fours1 = twosSum & twos3;
+        // add the fours: bits 2 and 3
+        long bit2 = fours0 ^ fours1;
+        long bit3 = fours0 & fours1;
+
+        long valid = this.validBits(w);
+        long mine = this.word(r, w);
+        long any = bit0 | bit1 | bit2 | bit3;
+        int i = r * this.wordsPerRow + w;
+        result.bit0[i] = bit0 & valid;
+        result.bit1[i] = bit1 & valid;
+        result.bit2[i] = bit2 & valid;
+        result.bit3[i] = bit3 & valid;
+        result.mines[i] = mine;
+        result.zero[i] = ~any & ~mine & valid;
+        result.numbered[i] = any & ~mine & valid;
+      }
+    }
+    return result;
+  }
+
+  // the bits of word w that are actual cells of the row
+  long validBits(int w) {
+    int used = this.columns - w * 64;
+    return used >= 64 ? -1L : (1L << used) - 1;
+  }
+}
+
+// to represent the neighbor counts of a whole Bitboard as bit planes:
+// a cell's count is bit0 + 2 * bit1 + 4 * bit2 + 8 * bit3, and the zero,
+// mines and numbered planes mark those kinds of cells directly
+class BitboardCounts {
+  int rows;
+  int columns;
+  int wordsPerRow;
+  long[] bit0;
+  long[] bit1;
+  long[] bit2;
+  long[] bit3;
+  // empty cells with no neighboring mines
+  long[] zero;
+  long[] mines;
+  // empty cells with at least one neighboring mine
+  long[] numbered;
+
+  BitboardCounts(Bitboard board) {
+    this.rows = board.rows;
+    this.columns = board.columns;
+    this.wordsPerRow = board.wordsPerRow;
+    int size = board.mines.length;
+    this.bit0 = new long[size];
+    this.bit1 = new long[size];
+    this.bit2 = new long[size];
+    this.bit3 = new long[size];
+    this.zero = new long[size];
+    this.mines = new long[size];
+    this.numbered = new long[size];
+  }
+
+  // the neighbor count of the cell at (r, c)
+  int count(int r, int c) {
+    int i = r * this.wordsPerRow + (c >>> 6);
+    return (int) ((this.bit0[i] >>> c) & 1) 
+        | (int) ((this.bit1[i] >>> c) & 1) << 1
+        | (int) ((this.bit2[i] >>> c) & 1) << 2
+        | (int) ((this.bit3[i] >>> c) & 1) << 3;
+  }
+
+  // the zero plane as one boolean per cell index, for the opening index
+  boolean[] zeroArray() {
+    boolean[] zero = new boolean[this.rows * this.columns];
+    for (int r = 0; r < this.rows; r++) {
+      for (int w = 0; w < this.wordsPerRow; w++) {
+        // only the set bits are visited, lowest first
+        long bits = this.zero[r * this.wordsPerRow + w];
+        while (bits != 0) {
+          zero[r * this.columns + w * 64 + Long.numberOfTrailingZeros(bits)] = true;
+          bits &= bits - 1;
+        }
+      }
+    }
+    return zero;
+  }
+
+  // how many cells are set in the given plane
+  int population(long[] plane) {
+    int n = 0;
+    for (long word : plane) {
+      n += Long.bitCount(word);
+    }
+    return n;
+  }
+
+  // do these counts agree with the counts stored in a packed board?
+  boolean matches(PackedBoard packed) {
+    for (int r = 0; r < this.rows; r++) {
+      for (int c = 0; c < this.columns; c++) {
+        if (this.count(r, c) != packed.countMines(r, c)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
+
+// the kinds of moves a player can make
+enum MoveKind {
+  // uncover a cell (left click)
+  REVEAL,
+  // place or remove a flag (right click)
+  FLAG,
+  // uncover the unflagged neighbors of a number that has all its flags
+  CHORD
+}
+
+// to represent one move on a cell, given by its coordinates
+class Move {
+  MoveKind kind;
+  int row;
+  int column;
+
+  Move(MoveKind kind, int row, int column) {
+    this.kind = kind;
+    this.row = row;
+    this.column = column;
+  }
+}
+
+// how a game stands
+enum GameStatus {
+  PLAYING,
+  WON,
+  LOST
+}
+
+// to represent how a cell looks after a batch of moves changed it
+class CellDelta {
+  int row;
+  int column;
+  boolean revealed;
+  boolean flagged;
+  // only meaningful once the cell is revealed
+  boolean hasMine;
+  int count;
+
+  CellDelta(int row, int column, Cell cell) {
+    this.row = row;
+    this.column = column;
+    this.revealed = cell.isRevealed();
+    this.flagged = cell.hasFlag();
+    this.hasMine = cell.isRevealed() && cell.hasMine;
+    this.count = cell.isRevealed() ? cell.countMines() : 0;
+  }
+}
+
+// to represent what a batch of moves did: the cells it changed (each
+// once, in board order) and how the game stands afterwards
+class MoveResult {
+  ArrayList<CellDelta> changed;
+  GameStatus status;
+  // how many of the moves were applied before the game ended
+  int applied;
+
+  MoveResult(MineSweeper game, IntList changes, int applied) {
+    int[] indices = changes.toArray();
+    Arrays.sort(indices);
+    this.changed = new ArrayList<CellDelta>();
+    for (int k = 0; k < indices.length; k++) {
+      if (k == 0 || indices[k] != indices[k - 1]) {
+        this.changed.add(new CellDelta(indices[k] / game.columns, indices[k] % game.columns, 
+            game.cellAt(indices[k])));
+      }
+    }
+    if (game.gameOver) {
+      this.status = GameStatus.LOST;
+    }
+    else if (game.win) {
+      this.status = GameStatus.WON;
+    }
+    else {
+      this.status = GameStatus.PLAYING;
+    }
+    this.applied = applied;
+  }
+}
+
+// the kinds of events a game reports, and how each event is packed
+// into one long: the kind in the high half, the cell index in the low
+// half (-1 for events about the whole game)
+class BoardEvents {
+  static final int REVEALED = 1;
+  static final int FLAGGED = 2;
+  static final int UNFLAGGED = 3;
+  static final int WON = 4;
+  static final int LOST = 5;
+  static final int RESTARTED = 6;
+  // events were dropped: the listener has to look at the board again
+  static final int OVERFLOW = 7;
+  // an undo covered a cell up again, or took back a win or loss
+  static final int COVERED = 8;
+  static final int RESUMED = 9;
+
+  // packs an event into a long
+  static long encode(int kind, int index) {
+    return ((long) kind << 32) | (index & 0xFFFFFFFFL);
+  }
+
+  // the kind of a packed event
+  static int kind(long event) {
+    return (int) (event >>> 32);
+  }
+
+  // the cell index of a packed event
+  static int index(long event) {
+    return (int) event;
+  }
+}
+
+// to hear about the changes to a game, one batch per operation
+// (a click, a batch of moves, a restart)
+interface IBoardListener {
+  // the first count packed events of events happened in one operation,
+  // the array is reused afterwards so listeners must copy what they keep
+  void onEvents(long[] events, int count);
+}
+
+// what an EventStream does when a new batch doesn't fit
+enum BackPressure {
+  // wait for the reader to make room
+  BLOCK,
+  // throw away the oldest batches
+  DROP_OLDEST,
+  // throw away the new batch
+  DROP_NEWEST
+}
+
+// to represent a bounded ring buffer of event batches, written by the
+// game and read by another thread (a renderer, a network client)
+// every batch is stored as a header holding its size, then its events
+// when batches are dropped the reader gets an OVERFLOW batch where the
+// gap is, telling it to look at the board again
+class EventStream implements IBoardListener {
+  long[] ring;
+  int mask;
+  BackPressure policy;
+  // total slots ever read and written, so positions never wrap
+  long head;
+  long tail;
+  // where dropped batches would have been, or -1 if none were dropped
+  long gapAt;
+
+  // capacity is rounded up to a power of two
+  EventStream(int capacity, BackPressure policy) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    this.ring = new long[size];
+    this.mask = size - 1;
+    this.policy = policy;
+    this.gapAt = -1;
+  }
+
+  // adds a batch, making room for it according to the policy
+  public synchronized void onEvents(long[] events, int count) {
+    int needed = count + 1;
+    if (needed > this.ring.length) {
+      this.markGap(this.tail);
+      return;
+    }
+    while (this.ring.length - (this.tail - this.head) < needed) {
+      if (this.policy == BackPressure.BLOCK) {
+        try {
+          this.wait();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          this.markGap(this.tail);
+          return;
+        }
+      }
+      else if (this.policy == BackPressure.DROP_OLDEST) {
+        this.head += this.ring[(int) (this.head & this.mask)] + 1;
+        this.gapAt = this.head;
+      }
+      else {
+        this.markGap(this.tail);
+        return;
+      }
+    }
+    this.ring[(int) (this.tail & this.mask)] = count;
+    for (int k = 0; k < count; k++) {
+      this.ring[(int) ((this.tail + 1 + k) & this.mask)] = events[k];
+    }
+    this.tail += needed;
+    this.notifyAll();
+  }
+
+  // remembers the first place batches went missing
+  void markGap(long at) {
+    if (this.gapAt < 0) {
+      this.gapAt = at;
+    }
+    this.notifyAll();
+  }
+
+  // copies the next batch into out and returns its size, or 0 if
+  // nothing is waiting; out must hold at least one full ring
+  synchronized int poll(long[] out) {
+    if (this.gapAt >= 0 && this.gapAt <= this.head) {
+      this.gapAt = -1;
+      out[0] = BoardEvents.encode(BoardEvents.OVERFLOW, -1);
+      return 1;
+    }
+    if (this.head == this.tail) {
+      return 0;
+    }
+    int count = (int) this.ring[(int) (this.head & this.mask)];
+    for (int k = 0; k < count; k++) {
+      out[k] = this.ring[(int) ((this.head + 1 + k) & this.mask)];
+    }
+    this.head += count + 1;
+    this.notifyAll();
+    return count;
+  }
+
+  // waits for the next batch, then copies it into out and returns its size
+  synchronized int take(long[] out) throws InterruptedException {
+    while (this.head == this.tail && this.gapAt < 0) {
+      this.wait();
+    }
+    return this.poll(out);
+  }
+}
+
+// to hash what a player can see of a board (Zobrist hashing): every
+// (cell, state) pair has a random-looking key, and a position's hash is
+// the xor of the keys of its revealed and flagged cells, so one change
+// updates the hash with one xor
+// keys are mixed from the cell index instead of stored, so they cost no
+// memory and are the same for every board with as many columns
+class Zobrist {
+  // states 0 to 8 are revealed numbers
+  static final int MINE = 9;
+  static final int FLAGGED = 10;
+
+  // the key of a cell being in a state
+  static long key(int columns, int index, int state) {
+    long z = ((long) index * 16 + state) * 0x9E3779B97F4A7C15L + columns;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // the state of a revealed cell
+  static int revealedState(Cell cell) {
+    return cell.hasMine ? MINE : cell.countMines();
+  }
+
+  // the hash of just the given cells of a game, such as one component of
+  // its frontier, so equal components on different boards hash alike
+  static long hashOf(MineSweeper game, int[] cells) {
+    long h = 0;
+    for (int i : cells) {
+      Cell cell = game.cellAt(i);
+      if (cell.isRevealed()) {
+        h ^= key(game.columns, i, revealedState(cell));
+      }
+      if (cell.hasFlag()) {
+        h ^= key(game.columns, i, FLAGGED);
+      }
+    }
+    return h;
+  }
+}
+
+// to represent a bounded, thread-safe cache of analysis results (solver
+// answers, probabilities) keyed by a position hash
+// when full it evicts with the CLOCK policy: a hand sweeps the slots,
+// giving each recently used entry a second chance before evicting it
+class AnalysisCache<V> {
+  long[] keys;
+  ArrayList<V> values;
+  boolean[] used;
+  HashMap<Long, Integer> slots;
+  int hand;
+  int hits;
+  int misses;
+
+  AnalysisCache(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("A cache needs room for at least one result");
+    }
+    this.keys = new long[capacity];
+    this.values = new ArrayList<V>(capacity);
+    this.used = new boolean[capacity];
+    this.slots = new HashMap<Long, Integer>();
+    this.hand = 0;
+  }
+
+  // the result stored for key, or null if there isn't one
+  synchronized V get(long key) {
+    Integer slot = this.slots.get(key);
+    if (slot == null) {
+      this.misses += 1;
+      return null;
+    }
+    this.hits += 1;
+    this.used[slot] = true;
+    return this.values.get(slot);
+  }
+
+  // stores a result for key, evicting an old one if the cache is full
+  synchronized void put(long key, V value) {
+    Integer slot = this.slots.get(key);
+    if (slot != null) {
+      this.values.set(slot, value);
+      this.used[slot] = true;
+      return;
+    }
+    if (this.values.size() < this.keys.length) {
+      this.keys[this.values.size()] = key;
+      this.slots.put(key, this.values.size());
+      this.values.add(value);
+      return;
+    }
+    // gives recently used entries a second chance
+    while (this.used[this.hand]) {
+      this.used[this.hand] = false;
+      this.hand = (this.hand + 1) % this.keys.length;
+    }
+    this.slots.remove(this.keys[this.hand]);
+    this.keys[this.hand] = key;
+    this.values.set(this.hand, value);
+    this.slots.put(key, this.hand);
+    this.hand = (this.hand + 1) % this.keys.length;
+  }
+
+  // how many results are stored
+  synchronized int size() {
+    return this.slots.size();
+  }
+}
+
+// to find every covered cell whose contents the revealed numbers prove,
+// even when the proof runs along a long frontier
+// each revealed number gives an equation: the sum of its covered
+// neighbors (0 or 1 each) equals its number minus its revealed mines
+// the equations split into independent groups that share no cells, and
+// each group is reduced with Gaussian elimination; then any row whose
+// value can only be reached one way forces all of its cells
+// rows are bit-packed and only span the words their cells fall in; cells
+// are numbered in board order, so rows stay short
+class FrontierSolver {
+  static final int HIDDEN = -1;
+  static final int MINE = 9;
+  // the most covered cells away from the frontier, and covered cells in
+  // all, for which the total-mines equation is still worth adding
+  static final int MAX_INTERIOR = 256;
+  static final int MAX_GLOBAL = 4096;
+
+  // solves the position a game shows, writing equations for just the
+  // numbers on its frontier
+  SolverResult solve(MineSweeper game) {
+    Frontier frontier = game.frontier();
+    return this.solve(frontier.state, game.neighborTable, game.mineCap,
+        frontier.numbers.dense, frontier.numbers.size, frontier.hidden, frontier.revealedMines);
+  }
+
+  // solves a position given as visible states (see visibleState) on a
+  // board with the given neighbors and total number of mines
+  SolverResult solve(int[] state, NeighborTable table, int mineCap) {
+    IntList numbers = new IntList();
+    int hidden = 0;
+    int revealedMines = 0;
+    for (int i = 0; i < state.length; i++) {
+      if (state[i] == HIDDEN) {
+        hidden += 1;
+      }
+      else if (state[i] == MINE) {
+        revealedMines += 1;
+      }
+      else {
+        numbers.add(i);
+      }
+    }
+    return this.solve(state, table, mineCap, numbers.items, numbers.size, hidden,
+        revealedMines);
+  }
+
+  // solves a position with the given counts of covered cells and revealed
+  // mines, writing equations for the first count of the given revealed
+  // numbers (numbers with no covered neighbors add nothing)
+  SolverResult solve(int[] state, NeighborTable table, int mineCap, int[] numbers, int count,
+      int hidden, int revealedMines) {
+    int size = state.length;
+    // every equation as the covered cells it sums and what they sum to,
+    // the cells of equation e being cells[start[e]] up to cells[start[e + 1]]
+    IntList start = new IntList();
+    IntList cells = new IntList();
+    IntList rhsOf = new IntList();
+    start.add(0);
+    for (int n = 0; n < count; n++) {
+      int i = numbers[n];
+      int rhs = state[i];
+      int before = cells.size;
+      for (int k = table.offsets[i]; k < table.offsets[i + 1]; k++) {
+        int j = table.indices[k];
+        if (state[j] == HIDDEN) {
+          cells.add(j);
+        }
+        else if (state[j] == MINE) {
+          rhs -= 1;
+        }
+      }
+      if (cells.size > before) {
+        start.add(cells.size);
+        rhsOf.add(rhs);
+      }
+    }
+    int minesLeft = mineCap - revealedMines;
+    // what is known of each cell: -1 unknown, 0 safe, 1 mine
+    int[] outcome = new int[size];
+    Arrays.fill(outcome, -1);
+
+    int equations = rhsOf.size;
+    int[] localVar = new int[size];
+    Arrays.fill(localVar, -1);
+    int frontier = 0;
+    for (int k = 0; k < cells.size; k++) {
+      if (localVar[cells.get(k)] < 0) {
+        localVar[cells.get(k)] = 0;
+        frontier += 1;
+      }
+    }
+    for (int k = 0; k < cells.size; k++) {
+      localVar[cells.get(k)] = -1;
+    }
+
+    if (hidden - frontier <= MAX_INTERIOR && hidden <= MAX_GLOBAL && hidden > 0) {
+      // the total number of mines is one more equation over every covered
+      // cell, which ties everything together, so it's only worth adding
+      // when few cells are covered
+      IntList all = new IntList(equations);
+      for (int e = 0; e < equations; e++) {
+        all.add(e);
+      }
+      start.add(cells.size);
+      for (int i = 0; i < size; i++) {
+        if (state[i] == HIDDEN) {
+          cells.add(i);
+        }
+      }
+      start.set(equations + 1, cells.size);
+      rhsOf.add(minesLeft);
+      all.add(equations);
+      this.solveEquations(all, start, cells, rhsOf, localVar, outcome);
+    }
+    else {
+      // otherwise the equations split into groups that share no cells,
+      // found by joining the cells of each equation with union-find
+      DisjointSets sets = new DisjointSets(size);
+      for (int e = 0; e < equations; e++) {
+        for (int k = start.get(e); k < start.get(e + 1); k++) {
+          sets.union(cells.get(start.get(e)), cells.get(k));
+        }
+      }
+      HashMap<Integer, IntList> groups = new HashMap<Integer, IntList>();
+      IntList roots = new IntList();
+      for (int e = 0; e < equations; e++) {
+        int root = sets.find(cells.get(start.get(e)));
+        if (!groups.containsKey(root)) {
+          groups.put(root, new IntList());
+          roots.add(root);
+        }
+        groups.get(root).add(e);
+      }
+      for (int g = 0; g < roots.size; g++) {
+        this.solveEquations(groups.get(roots.get(g)), start, cells, rhsOf, localVar, outcome);
+      }
+      if (minesLeft == 0 || minesLeft == hidden) {
+        // every covered cell is safe, or every one is a mine
+        for (int i = 0; i < size; i++) {
+          if (state[i] == HIDDEN) {
+            outcome[i] = minesLeft == 0 ? 0 : 1;
+          }
+        }
+      }
+    }
+
+    SolverResult result = new SolverResult();
+    for (int i = 0; i < size; i++) {
+      if (outcome[i] == 0) {
+        result.safe.add(i);
+      }
+      else if (outcome[i] == 1) {
+        result.mines.add(i);
+      }
+    }
+    return result;
+  }
+
+  // solves the given equations, recording the cells they force in outcome
+  // localVar is scratch space, all -1, and is left that way
+  void solveEquations(IntList equations, IntList start, IntList cells, IntList rhsOf,
+      int[] localVar, int[] outcome) {
+    IntList cellOf = new IntList();
+    ArrayList<SolverRow> rows = new ArrayList<SolverRow>(equations.size);
+    IntList vars = new IntList();
+    for (int k = 0; k < equations.size; k++) {
+      int e = equations.get(k);
+      rows.add(this.row(cells, start.get(e), start.get(e + 1), rhsOf.get(e), 
+          localVar, cellOf, vars));
+    }
+    int[] known = new int[cellOf.size];
+    for (int v = 0; v < cellOf.size; v++) {
+      known[v] = outcome[cellOf.get(v)];
+    }
+    for (SolverRow row : rows) {
+      row.substitute(known);
+    }
+    boolean progress = true;
+    while (progress) {
+      if (Thread.currentThread().isInterrupted()) {
+        break;
+      }
+      // the rows as they stand settle most cells cheaply, so elimination
+      // only runs once they stop giving anything
+      this.deduceAll(rows, known);
+      this.eliminate(rows);
+      progress = this.deduceAll(rows, known);
+    }
+    for (int v = 0; v < cellOf.size; v++) {
+      outcome[cellOf.get(v)] = known[v];
+      localVar[cellOf.get(v)] = -1;
+    }
+  }
+
+  // the row summing the given cells to rhs, numbering any cell it
+  // hasn't seen yet
+  SolverRow row(IntList cells, int from, int to, int rhs, int[] localVar, IntList cellOf,
+      IntList vars) {
+    vars.clear();
+    for (int k = from; k < to; k++) {
+      int j = cells.get(k);
+      if (localVar[j] < 0) {
+        localVar[j] = cellOf.size;
+        cellOf.add(j);
+      }
+      vars.add(localVar[j]);
+    }
+    return new SolverRow(vars, rhs);
+  }
+
+  // reduces the rows: each row in turn pivots on its first cell, which is
+  // then removed from every other row that has it
+  // a subtraction that would give a coefficient of 2 is skipped, which
+  // leaves a true (if less reduced) equation behind
+  void eliminate(ArrayList<SolverRow> rows) {
+    ArrayList<IntList> byWord = this.buckets(rows);
+    for (int p = 0; p < rows.size(); p++) {
+      SolverRow pivot = rows.get(p);
+      int v = pivot.firstVar();
+      if (v < 0) {
+        continue;
+      }
+      if (pivot.coefficient(v) < 0) {
+        pivot.negate();
+      }
+      IntList bucket = byWord.get(v >>> 6);
+      for (int k = 0; k < bucket.size; k++) {
+        int q = bucket.get(k);
+        SolverRow other = rows.get(q);
+        int coefficient = other.coefficient(v);
+        if (q != p && coefficient != 0) {
+          int lo = other.lo;
+          int hi = other.lo + other.pos.length;
+          other.combine(pivot, -coefficient);
+          // a row that grew has to be found from its new words too
+          this.addToBuckets(byWord, q, other.lo, lo);
+          this.addToBuckets(byWord, q, hi, other.lo + other.pos.length);
+        }
+      }
+    }
+  }
+
+  // the rows listed by every word they span, so the rows that could hold
+  // a cell are found without looking at all of them
+  ArrayList<IntList> buckets(ArrayList<SolverRow> rows) {
+    ArrayList<IntList> byWord = new ArrayList<IntList>();
+    for (int p = 0; p < rows.size(); p++) {
+      SolverRow row = rows.get(p);
+      this.addToBuckets(byWord, p, row.lo, row.lo + row.pos.length);
+    }
+    return byWord;
+  }
+
+  // adds row p to the buckets of words from up to to
+  void addToBuckets(ArrayList<IntList> byWord, int p, int from, int to) {
+    while (byWord.size() < to) {
+      byWord.add(new IntList(4));
+    }
+    for (int w = from; w < to; w++) {
+      byWord.get(w).add(p);
+    }
+  }
+
+  // deduces from the rows, substituting what was learned into just the
+  // rows that hold it and looking at those again, until nothing more
+  // comes out; returns true if anything was learned
+  boolean deduceAll(ArrayList<SolverRow> rows, int[] known) {
+    ArrayList<IntList> byWord = this.buckets(rows);
+    IntList queue = new IntList(rows.size());
+    boolean[] queued = new boolean[rows.size()];
+    for (int p = rows.size() - 1; p >= 0; p--) {
+      queue.add(p);
+      queued[p] = true;
+    }
+    IntList learned = new IntList();
+    while (queue.size > 0) {
+      queue.size -= 1;
+      int p = queue.get(queue.size);
+      queued[p] = false;
+      SolverRow row = rows.get(p);
+      row.substitute(known);
+      int before = learned.size;
+      this.deduce(row, known, learned);
+      for (int k = before; k < learned.size; k++) {
+        int v = learned.get(k);
+        IntList bucket = byWord.get(v >>> 6);
+        for (int j = 0; j < bucket.size; j++) {
+          int q = bucket.get(j);
+          if (!queued[q] && rows.get(q).coefficient(v) != 0) {
+            queued[q] = true;
+            queue.add(q);
+          }
+        }
+      }
+    }
+    return learned.size > 0;
+  }
+
+  // marks the cells of a row that can only be reached one way:
+  // all positive cells mines and negative ones safe when the row needs
+  // its largest possible value, the other way around for its smallest
+  // adds every newly known variable to learned
+  void deduce(SolverRow row, int[] known, IntList learned) {
+    int positives = row.count(row.pos);
+    int negatives = row.count(row.neg);
+    if (positives + negatives == 0) {
+      return;
+    }
+    int posValue;
+    if (row.rhs == positives) {
+      posValue = 1;
+    }
+    else if (row.rhs == -negatives) {
+      posValue = 0;
+    }
+    else {
+      return;
+    }
+    for (int w = 0; w < row.pos.length; w++) {
+      this.mark(row.pos[w], (row.lo + w) * 64, posValue, known, learned);
+      this.mark(row.neg[w], (row.lo + w) * 64, 1 - posValue, known, learned);
+    }
+  }
+
+  // marks every variable set in word (starting at variable base) as value
+  void mark(long word, int base, int value, int[] known, IntList learned) {
+    while (word != 0) {
+      int v = base + Long.numberOfTrailingZeros(word);
+      if (known[v] < 0) {
+        known[v] = value;
+        learned.add(v);
+      }
+      word &= word - 1;
+    }
+  }
+}
+
+// to represent one equation of the frontier solver: coefficients of
+// +1 (pos bits) and -1 (neg bits) over the variables in the words
+// lo up to lo + pos.length, summing to rhs
+class SolverRow {
+  int lo;
+  long[] pos;
+  long[] neg;
+  int rhs;
+
+  // the equation: the sum of the given variables is rhs
+  SolverRow(IntList vars, int rhs) {
+    int min = Integer.MAX_VALUE;
+    int max = 0;
+    for (int k = 0; k < vars.size; k++) {
+      min = Math.min(min, vars.get(k));
+      max = Math.max(max, vars.get(k));
+    }
+    this.lo = min >>> 6;
+    this.pos = new long[(max >>> 6) - this.lo + 1];
+    this.neg = new long[this.pos.length];
+    for (int k = 0; k < vars.size; k++) {
+      int v = vars.get(k);
+      this.pos[(v >>> 6) - this.lo] |= 1L << v;
+    }
+    this.rhs = rhs;
+  }
+
+  // the coefficient of variable v: 1, -1 or 0
+  int coefficient(int v) {
+    int w = (v >>> 6) - this.lo;
+    if (w < 0 || w >= this.pos.length) {
+      return 0;
+    }
+    if ((this.pos[w] & (1L << v)) != 0) {
+      return 1;
+    }
+    return (this.neg[w] & (1L << v)) != 0 ? -1 : 0;
+  }
+
+  // the first variable in this row, or -1 if it's empty
+  int firstVar() {
+    for (int w = 0; w < this.pos.length; w++) {
+      long any = this.pos[w] | this.neg[w];
+      if (any != 0) {
+        return (this.lo + w) * 64 + Long.numberOfTrailingZeros(any);
+      }
+    }
+    return -1;
+  }
+
+  // multiplies this row by -1
+  void negate() {
+    long[] swap = this.pos;
+    this.pos = this.neg;
+    this.neg = swap;
+    this.rhs = -this.rhs;
+  }
+
+  // adds factor (1 or -1) times other to this row, unless that would
+  // give some variable a coefficient of 2
+  void combine(SolverRow other, int factor) {
+    long[] otherPos = factor > 0 ? other.pos : other.neg;
+    long[] otherNeg = factor > 0 ? other.neg : other.pos;
+    int lo = Math.min(this.lo, other.lo);
+    int hi = Math.max(this.lo + this.pos.length, other.lo + other.pos.length);
+    long[] newPos = new long[hi - lo];
+    long[] newNeg = new long[hi - lo];
+    for (int w = lo; w < hi; w++) {
+      long xp = this.word(this.pos, w);
+      long xn = this.word(this.neg, w);
+      long yp = other.word(otherPos, w);
+      long yn = other.word(otherNeg, w);
+      if ((xp & yp) != 0 || (xn & yn) != 0) {
+        return;
+      }
+      newPos[w - lo] = (xp & ~yn) | (yp & ~xn);
+      newNeg[w - lo] = (xn & ~yp) | (yn & ~xp);
+    }
+    this.lo = lo;
+    this.pos = newPos;
+    this.neg = newNeg;
+    this.rhs += factor * other.rhs;
+  }
+
+  // word w of one of this row's bit arrays, or 0 outside its span
+  long word(long[] bits, int w) {
+    int k = w - this.lo;
+    return k >= 0 && k < bits.length ? bits[k] : 0;
+  }
+
+  // removes the variables whose values are known, moving them to the rhs
+  void substitute(int[] known) {
+    for (int w = 0; w < this.pos.length; w++) {
+      this.rhs -= this.clearKnown(this.pos, w, known);
+      this.rhs += this.clearKnown(this.neg, w, known);
+    }
+  }
+
+  // clears the known variables of bits[w], returning how many were mines
+  int clearKnown(long[] bits, int w, int[] known) {
+    int mines = 0;
+    long word = bits[w];
+    while (word != 0) {
+      int v = (this.lo + w) * 64 + Long.numberOfTrailingZeros(word);
+      if (known[v] >= 0) {
+        mines += known[v];
+        bits[w] &= ~(1L << v);
+      }
+      word &= word - 1;
+    }
+    return mines;
+  }
+
+  // how many variables are set in bits
+  int count(long[] bits) {
+    int n = 0;
+    for (long word : bits) {
+      n += Long.bitCount(word);
+    }
+    return n;
+  }
+}
+
+// to represent what the frontier solver proved: the indices of the
+// covered cells that must be safe and those that must be mines
+class SolverResult {
+  IntList safe;
+  IntList mines;
+
+  SolverResult() {
+    this.safe = new IntList();
+    this.mines = new IntList();
+  }
+}
+
+// to represent a hint: the covered cell to reveal next (-1 if there's
+// none left), whether the solver proved it safe, and otherwise roughly
+// how likely it is to hide a mine
+class Hint {
+  int cell;
+  boolean certain;
+  double chance;
+
+  Hint(int cell, boolean certain, double chance) {
+    this.cell = cell;
+    this.certain = certain;
+    this.chance = chance;
+  }
+}
+
+// to work out hints off the game thread: the position is copied as the
+// hint is asked for and analyzed on a background thread, so frames never
+// wait on the solver, and the answer is cached by the position's hash
+// a move that changes what's revealed cancels the analysis, so the worker
+// never spends its time on a position the player has left
+class HintService {
+  static final int CACHE_SIZE = 1024;
+  // how many cells the guess pass looks at between checks for cancelling
+  static final int CHECK_EVERY = 4096;
+  ExecutorService executor;
+  FrontierSolver solver;
+  AnalysisCache<Hint> cache;
+  // the analysis running for the position on the board, if any
+  Future<Hint> pending;
+
+  HintService() {
+    // a daemon thread, so a game left with analysis running can still exit
+    this.executor = Executors.newSingleThreadExecutor(task -> {
+      Thread thread = new Thread(task, "hints");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.solver = new FrontierSolver();
+    this.cache = new AnalysisCache<Hint>(CACHE_SIZE);
+  }
+
+  // the hint for the game's position if it's been analyzed before;
+  // otherwise starts analyzing it (if that isn't already underway) and
+  // gives null
+  Hint request(MineSweeper game) {
+    Hint hint = this.cache.get(game.hash);
+    if (hint != null || this.pending != null) {
+      return hint;
+    }
+    // the worker gets its own copy; the neighbor table never changes
+    Frontier frontier = game.frontier();
+    int[] state = frontier.state.clone();
+    int[] numbers = Arrays.copyOf(frontier.numbers.dense, frontier.numbers.size);
+    int hidden = frontier.hidden;
+    int revealedMines = frontier.revealedMines;
+    NeighborTable table = game.neighborTable;
+    int mineCap = game.mineCap;
+    long hash = game.hash;
+    this.pending = this.executor.submit(() -> {
+      Hint found = this.analyze(state, table, mineCap, numbers, hidden, revealedMines);
+      if (found != null) {
+        this.cache.put(hash, found);
+      }
+      return found;
+    });
+    return null;
+  }
+
+  // the hint the analysis found, or null if it isn't done; never waits
+  Hint poll() {
+    if (this.pending == null || !this.pending.isDone()) {
+      return null;
+    }
+    Future<Hint> done = this.pending;
+    this.pending = null;
+    try {
+      return done.get();
+    }
+    catch (CancellationException | InterruptedException | ExecutionException e) {
+      return null;
+    }
+  }
+
+  // stops the analysis, if one is running
+  void cancel() {
+    if (this.pending != null) {
+      this.pending.cancel(true);
+      this.pending = null;
+    }
+  }
+
+  // the safest cell to reveal in a position, given as for
+  // FrontierSolver.solve, or null if the analysis was cancelled
+  Hint analyze(int[] state, NeighborTable table, int mineCap, int[] numbers, int hidden,
+      int revealedMines) {
+    SolverResult proved = this.solver.solve(state, table, mineCap, numbers, numbers.length,
+        hidden, revealedMines);
+    if (Thread.currentThread().isInterrupted()) {
+      return null;
+    }
+    if (proved.safe.size > 0) {
+      return new Hint(proved.safe.get(0), true, 0);
+    }
+    // nothing is sure, so the guess is the cell least likely to be a
+    // mine: a number spreads what it still needs over its covered
+    // neighbors, and a cell takes the worst of its numbers; cells away
+    // from the numbers share the mines left evenly
+    double[] risk = new double[state.length];
+    Arrays.fill(risk, -1);
+    for (int k = 0; k < proved.mines.size; k++) {
+      risk[proved.mines.get(k)] = 1;
+    }
+    for (int n = 0; n < numbers.length; n++) {
+      int i = numbers[n];
+      int left = state[i];
+      int covered = 0;
+      for (int k = table.offsets[i]; k < table.offsets[i + 1]; k++) {
+        int j = table.indices[k];
+        if (state[j] == FrontierSolver.MINE || risk[j] == 1) {
+          left -= 1;
+        }
+        else if (state[j] == FrontierSolver.HIDDEN) {
+          covered += 1;
+        }
+      }
+      for (int k = table.offsets[i]; k < table.offsets[i + 1]; k++) {
+        int j = table.indices[k];
+        if (state[j] == FrontierSolver.HIDDEN && risk[j] < 1) {
+          risk[j] = Math.max(risk[j], (double) left / covered);
+        }
+      }
+    }
+    int unknown = hidden - proved.mines.size;
+    double elsewhere = unknown > 0
+        ? (double) (mineCap - revealedMines - proved.mines.size) / unknown : 1;
+    int best = -1;
+    double lowest = 2;
+    for (int i = 0; i < state.length; i++) {
+      if (i % CHECK_EVERY == 0 && Thread.currentThread().isInterrupted()) {
+        return null;
+      }
+      if (state[i] == FrontierSolver.HIDDEN && risk[i] < 1) {
+        double chance = risk[i] < 0 ? elsewhere : risk[i];
+        if (chance < lowest) {
+          best = i;
+          lowest = chance;
+        }
+      }
+    }
+    return new Hint(best, false, best < 0 ? 1 : lowest);
+  }
+}
+
+// to rate how hard boards are before serving them: 3BV, openings,
+// isolated numbers, and whether logic alone clears the board from a
+// starting click, all straight from packed boards with no rendering
+// every board a rater sees has the same size, mines and topology, so
+// the neighbor table is shared by all of them
+class BoardRater {
+  ITopology topology;
+  int rows;
+  int columns;
+  int mineCap;
+  NeighborTable table;
+  BoardGenerator generator;
+  FrontierSolver solver;
+
+  BoardRater(ITopology topology, int rows, int columns, int mineCap) {
+    this.topology = topology;
+    this.rows = rows;
+    this.columns = columns;
+    this.mineCap = mineCap;
+    this.table = new NeighborTable(topology, rows, columns);
+    this.generator = new BoardGenerator(topology);
+    this.solver = new FrontierSolver();
+  }
+
+  // rates the board a seed generates, starting in its largest opening
+  BoardRating rateSeed(long seed) {
+    PackedBoard packed = this.generator.generate(this.rows, this.columns, this.mineCap, seed);
+    return this.rate(packed, seed, -1);
+  }
+
+  // rates every seed from up to to, spread over all cores, in seed order
+  ArrayList<BoardRating> rateSeeds(long from, long to) {
+    BoardRating[] ratings = new BoardRating[(int) (to - from)];
+    IntStream.range(0, ratings.length).parallel()
+        .forEach(k -> ratings[k] = this.rateSeed(from + k));
+    return new ArrayList<BoardRating>(Arrays.asList(ratings));
+  }
+
+  // rates a board, starting from the cell at index start
+  // (or in its largest opening when start is -1)
+  // the solver is told the rater's mine total, so the board has to have
+  // exactly that many mines as well as the rater's size
+  BoardRating rate(PackedBoard packed, long seed, int start) {
+    int mines = packed.mineCount();
+    if (packed.rows != this.rows || packed.columns != this.columns || mines != this.mineCap) {
+      throw new IllegalArgumentException("This rater is for " + this.rows + " x "
+          + this.columns + " boards with " + this.mineCap + " mines, not " + packed.rows
+          + " x " + packed.columns + " with " + mines);
+    }
+    boolean[] mine = packed.mineArray();
+    OpeningIndex index = new OpeningIndex(mine, this.topology, this.table);
+    if (start < 0) {
+      start = this.bestStart(index, mine);
+    }
+    int[] state = new int[mine.length];
+    Arrays.fill(state, FrontierSolver.HIDDEN);
+    // revealed numbers that may still settle their neighbors
+    IntList work = new IntList();
+    int safeCells = mine.length - this.mineCap;
+    int revealed = this.reveal(packed, index, start, state, work);
+    boolean stuck = mine[start];
+    while (!stuck && revealed < safeCells) {
+      // the single-number rules settle most cells, so the full solver
+      // only runs once they stop
+      revealed += this.propagate(packed, index, state, work);
+      if (revealed == safeCells) {
+        break;
+      }
+      SolverResult result = this.solver.solve(state, this.table, this.mineCap);
+      stuck = result.safe.size == 0 && result.mines.size == 0;
+      for (int k = 0; k < result.mines.size; k++) {
+        this.markMine(result.mines.get(k), state, work);
+      }
+      for (int k = 0; k < result.safe.size; k++) {
+        revealed += this.reveal(packed, index, result.safe.get(k), state, work);
+      }
+    }
+    return new BoardRating(seed, index, mine[start] ? 0 : revealed,
+        !mine[start] && revealed == safeCells);
+  }
+
+  // applies the rules a single number gives (all its mines found: the
+  // rest are safe; as many covered cells as mines left: all are mines)
+  // to the numbers in work until none applies, returning how many empty
+  // cells that uncovered
+  int propagate(PackedBoard packed, OpeningIndex index, int[] state, IntList work) {
+    int revealed = 0;
+    while (work.size > 0) {
+      work.size -= 1;
+      int i = work.get(work.size);
+      int hidden = 0;
+      int mines = 0;
+      for (int k = this.table.offsets[i]; k < this.table.offsets[i + 1]; k++) {
+        int j = this.table.indices[k];
+        if (state[j] == FrontierSolver.HIDDEN) {
+          hidden += 1;
+        }
+        else if (state[j] == FrontierSolver.MINE) {
+          mines += 1;
+        }
+      }
+      if (hidden == 0 || (state[i] != mines && state[i] - mines != hidden)) {
+        continue;
+      }
+      boolean safe = state[i] == mines;
+      for (int k = this.table.offsets[i]; k < this.table.offsets[i + 1]; k++) {
+        int j = this.table.indices[k];
+        if (state[j] == FrontierSolver.HIDDEN) {
+          if (safe) {
+            revealed += this.reveal(packed, index, j, state, work);
+          }
+          else {
+            this.markMine(j, state, work);
+          }
+        }
+      }
+    }
+    return revealed;
+  }
+
+  // records that the covered cell at index i is a mine, which the solver
+  // treats like a revealed one, and rechecks the numbers around it
+  void markMine(int i, int[] state, IntList work) {
+    state[i] = FrontierSolver.MINE;
+    for (int k = this.table.offsets[i]; k < this.table.offsets[i + 1]; k++) {
+      int j = this.table.indices[k];
+      if (state[j] > 0 && state[j] < FrontierSolver.MINE) {
+        work.add(j);
+      }
+    }
+  }
+
+  // a cell in the largest opening, or the first empty cell if there are none
+  int bestStart(OpeningIndex index, boolean[] mine) {
+    int best = -1;
+    for (int g = 0; g < index.openings(); g++) {
+      if (best < 0 || index.regionSize(g) > index.regionSize(best)) {
+        best = g;
+      }
+    }
+    if (best >= 0) {
+      return index.regionCells[index.regionStart[best]];
+    }
+    int i = 0;
+    while (i < mine.length - 1 && mine[i]) {
+      i++;
+    }
+    return i;
+  }
+
+  // reveals the cell at index i (and its opening) in state, returning
+  // how many empty cells that uncovered
+  int reveal(PackedBoard packed, OpeningIndex index, int i, int[] state, IntList work) {
+    int region = index.regionOf[i];
+    if (region < 0) {
+      return this.revealOne(packed, i, state, work);
+    }
+    int revealed = 0;
+    for (int k = index.regionStart[region]; k < index.regionStart[region + 1]; k++) {
+      revealed += this.revealOne(packed, index.regionCells[k], state, work);
+    }
+    return revealed;
+  }
+
+  // reveals just the cell at index i, returning 1 if it was a new empty
+  // cell; new numbers go on the work list
+  int revealOne(PackedBoard packed, int i, int[] state, IntList work) {
+    if (state[i] != FrontierSolver.HIDDEN) {
+      return 0;
+    }
+    int r = i / this.columns;
+    int c = i % this.columns;
+    if (packed.hasMine(r, c)) {
+      state[i] = FrontierSolver.MINE;
+      return 0;
+    }
+    state[i] = packed.countMines(r, c);
+    if (state[i] > 0) {
+      work.add(i);
+    }
+    return 1;
+  }
+}
+
+// to represent how hard one board is
+class BoardRating {
+  long seed;
+  // the fewest clicks that clear the board
+  int threeBV;
+  int openings;
+  // numbered cells no opening reveals
+  int isolatedNumbers;
+  // how many empty cells logic uncovered from the start
+  int cellsSolved;
+  // can the board be cleared from the start without guessing?
+  boolean noGuess;
+
+  BoardRating(long seed, OpeningIndex index, int cellsSolved, boolean noGuess) {
+    this.seed = seed;
+    this.threeBV = index.threeBV();
+    this.openings = index.openings();
+    this.isolatedNumbers = index.isolatedNumbers;
+    this.cellsSolved = cellsSolved;
+    this.noGuess = noGuess;
+  }
+}
+
+// to represent a growable list of ints, without boxing each one
+class IntList {
+  int[] items;
+  int size;
+
+  IntList(int capacity) {
+    this.items = new int[Math.max(1, capacity)];
+    this.size = 0;
+  }
+
+  IntList() {
+    this(16);
+  }
+
+  // adds x to the end of this list
+  void add(int x) {
+    if (this.size == this.items.length) {
+      this.items = Arrays.copyOf(this.items, this.size * 2);
+    }
+    this.items[this.size] = x;
+    this.size += 1;
+  }
+
+  // the i-th item of this list
+  int get(int i) {
+    return this.items[i];
+  }
+
+  // replaces the i-th item of this list with x
+  void set(int i, int x) {
+    this.items[i] = x;
+  }
+
+  // empties this list, keeping its storage
+  void clear() {
+    this.size = 0;
+  }
+
+  // the items of this list as an array of exactly the right length
+  int[] toArray() {
+    return Arrays.copyOf(this.items, this.size);
+  }
+}
+
+// to represent a union-find over the ints 0 up to size, used to group
+// touching zeros into openings and equations into independent groups
+// the smaller index of two joined sets becomes the root, so the root of
+// a set is always its smallest member
+class DisjointSets {
+  int[] parent;
+
+  DisjointSets(int size) {
+    this.parent = new int[size];
+    for (int i = 0; i < size; i++) {
+      this.parent[i] = i;
+    }
+  }
+
+  // the root of x's set, halving the path on the way up
+  int find(int x) {
+    while (this.parent[x] != x) {
+      this.parent[x] = this.parent[this.parent[x]];
+      x = this.parent[x];
+    }
+    return x;
+  }
+
+  // joins the sets of x and y
+  void union(int x, int y) {
+    int rootX = this.find(x);
+    int rootY = this.find(y);
+    if (rootX != rootY) {
+      this.parent[Math.max(rootX, rootY)] = Math.min(rootX, rootY);
+    }
+  }
+}
+
+// to represent the moves of a game as just the changes they made, so
+// they can be taken back and made again without copying the board
+class MoveHistory {
+  // how many ints of changes to keep (about 4MB) before forgetting
+  // the oldest moves
+  static final int DEFAULT_CAPACITY = 1 << 20;
+  static final int PLAYING = 0;
+  static final int LOST = 1;
+  static final int WON = 2;
+  // the event kinds a change can have, stored as their position here
+  // since a change only has 2 bits for its kind
+  static final int[] KINDS = {BoardEvents.REVEALED, BoardEvents.FLAGGED,
+    BoardEvents.UNFLAGGED};
+  // each step is a header (the status before, and after << 2) followed
+  // by the changes in order, packed as index << 2 | code of event kind
+  ArrayDeque<int[]> undos;
+  ArrayDeque<int[]> redos;
+  // the changes of the move being made
+  IntList current;
+  boolean recording;
+  int before;
+  // how many ints all the steps take up, and how many they may
+  int stored;
+  int capacity;
+
+  MoveHistory(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("History capacity can't be negative");
+    }
+    this.undos = new ArrayDeque<int[]>();
+    this.redos = new ArrayDeque<int[]>();
+    this.current = new IntList();
+    this.capacity = capacity;
+  }
+
+  // starts recording a move made while the game had the given status
+  void begin(int status) {
+    this.current.clear();
+    this.before = MoveHistory.checkStatus(status);
+    this.recording = true;
+  }
+
+  // notes a change of the move being recorded
+  void record(int index, int kind) {
+    if (this.recording) {
+      this.current.add(index << 2 | MoveHistory.code(kind));
+    }
+  }
+
+  // finishes the move being recorded; a move that changed something
+  // can't be redone past, so whatever was undone is dropped
+  void commit(int status) {
+    MoveHistory.checkStatus(status);
+    this.recording = false;
+    if (this.current.size == 0 && status == this.before) {
+      return;
+    }
+    int[] step = new int[this.current.size + 1];
+    step[0] = this.before | status << 2;
+    System.arraycopy(this.current.items, 0, step, 1, this.current.size);
+    for (int[] undone : this.redos) {
+      this.stored -= undone.length;
+    }
+    this.redos.clear();
+    this.undos.push(step);
+    this.stored += step.length;
+    this.trim();
+  }
+
+  // the last step made, moved over to be redone, or null if there isn't one
+  int[] undo() {
+    int[] step = this.undos.poll();
+    if (step != null) {
+      this.redos.push(step);
+    }
+    return step;
+  }
+
+  // the last step undone, moved back to be undone, or null if there isn't one
+  int[] redo() {
+    int[] step = this.redos.poll();
+    if (step != null) {
+      this.undos.push(step);
+    }
+    return step;
+  }
+
+  // changes how much history is kept, forgetting moves if it's now too much
+  void setCapacity(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("History capacity can't be negative");
+    }
+    this.capacity = capacity;
+    this.trim();
+  }
+
+  // forgets the oldest moves, then the furthest undone ones, until
+  // the history fits
+  void trim() {
+    while (this.stored > this.capacity && !this.undos.isEmpty()) {
+      this.stored -= this.undos.removeLast().length;
+    }
+    while (this.stored > this.capacity && !this.redos.isEmpty()) {
+      this.stored -= this.redos.removeLast().length;
+    }
+  }
+
+  // forgets every move
+  void clear() {
+    this.undos.clear();
+    this.redos.clear();
+    this.stored = 0;
+    this.recording = false;
+  }
+
+  // the cell of a packed change
+  static int index(int change) {
+    return change >>> 2;
+  }
+
+  // the event kind of a packed change
+  static int kind(int change) {
+    return KINDS[change & 3];
+  }
+
+  // the 2-bit code a change of the given event kind is stored with
+  static int code(int kind) {
+    for (int k = 0; k < KINDS.length; k++) {
+      if (KINDS[k] == kind) {
+        return k;
+      }
+    }
+    throw new IllegalArgumentException("Can't record a change of kind " + kind);
+  }
+
+  // the given status, if it fits in a step's header
+  static int checkStatus(int status) {
+    if (status < PLAYING || status > WON) {
+      throw new IllegalArgumentException("Unknown game status " + status);
+    }
+    return status;
+  }
+
+  // the status before a step, from its header
+  static int before(int header) {
+    return header & 3;
+  }
+
+  // the status after a step, from its header
+  static int after(int header) {
+    return header >>> 2;
+  }
+}
+
+// to represent how to start a game: its size, mines, seed, how it's
+// shown and how fast the clock ticks
+class LaunchConfig {
+  static final List<String> PRESETS = Arrays.asList("beginner", "intermediate", "expert",
+      "custom");
+  static final List<String> RENDERERS = Arrays.asList("window", "terminal", "headless");
+  static final List<String> SETTINGS = Arrays.asList("preset", "rows", "columns", "mines",
+      "seed", "renderer", "tick", "save", "stats");
+  String preset;
+  int rows;
+  int columns;
+  int mines;
+  // boards from the same seed come out the same; without one the
+  // board is random
+  boolean seeded;
+  long seed;
+  String renderer;
+  // seconds per frame; the clock still counts whole seconds
+  double tickRate;
+  // where to autosave the game and resume it from, or null to not save
+  String saveDir;
+  // where to keep statistics of finished games, or null to not keep them
+  String statsDir;
+
+  LaunchConfig(String preset, int rows, int columns, int mines, boolean seeded, long seed,
+      String renderer, double tickRate) {
+    if (rows < 1 || columns < 1) {
+      throw new IllegalArgumentException("A board needs at least one row and one column");
+    }
+    // undo packs cell indices into 30 bits
+    if ((long) rows * columns > 1 << 29) {
+      throw new IllegalArgumentException("A board can have at most " + (1 << 29) + " cells");
+    }
+    if (mines < 0 || mines >= rows * columns) {
+      throw new IllegalArgumentException("A board needs between 0 and "
+          + (rows * columns - 1) + " mines");
+    }
+    if (!RENDERERS.contains(renderer)) {
+      throw new IllegalArgumentException("Unknown renderer " + renderer);
+    }
+    if (!(tickRate > 0)) {
+      throw new IllegalArgumentException("The tick rate has to be positive");
+    }
+    this.preset = preset;
+    this.rows = rows;
+    this.columns = columns;
+    this.mines = mines;
+    this.seeded = seeded;
+    this.seed = seed;
+    this.renderer = renderer;
+    this.tickRate = tickRate;
+  }
+
+  // reads options like --rows=16 or --rows 16; --config names a
+  // properties file with the same settings, which the options override
+  static LaunchConfig parse(String[] args) {
+    Properties options = new Properties();
+    for (int k = 0; k < args.length; k++) {
+      String arg = args[k];
+      if (!arg.startsWith("--")) {
+        throw new IllegalArgumentException("Expected an option like --rows=16, not " + arg);
+      }
+      int equals = arg.indexOf('=');
+      if (equals >= 0) {
+        options.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+      }
+      else if (k + 1 < args.length) {
+        options.setProperty(arg.substring(2), args[k + 1]);
+        k += 1;
+      }
+      else {
+        throw new IllegalArgumentException("Missing a value for " + arg);
+      }
+    }
+    Properties settings = new Properties();
+    String file = options.getProperty("config");
+    if (file != null) {
+      try (Reader reader = Files.newBufferedReader(Paths.get(file))) {
+        settings.load(reader);
+      }
+      catch (IOException e) {
+        throw new IllegalArgumentException("Can't read config file " + file, e);
+      }
+      options.remove("config");
+    }
+    settings.putAll(options);
+    return fromProperties(settings);
+  }
+
+  // the config for the given settings, starting from a preset
+  // (beginner unless one is given) and overriding what's set
+  static LaunchConfig fromProperties(Properties settings) {
+    for (String key : settings.stringPropertyNames()) {
+      if (!SETTINGS.contains(key)) {
+        throw new IllegalArgumentException("Unknown setting " + key);
+      }
+    }
+    String preset = settings.getProperty("preset", "beginner").trim().toLowerCase(Locale.ROOT);
+    if (!PRESETS.contains(preset)) {
+      throw new IllegalArgumentException("Unknown preset " + preset + ", expected one of "
+          + PRESETS);
+    }
+    if (preset.equals("custom") && (settings.getProperty("rows") == null
+        || settings.getProperty("columns") == null || settings.getProperty("mines") == null)) {
+      throw new IllegalArgumentException("A custom game needs rows, columns and mines");
+    }
+    int[] size = preset.equals("custom") ? new int[3] : presetSize(preset);
+    int rows = size[0];
+    int columns = size[1];
+    int mines = size[2];
+    int rowsSet = intSetting(settings, "rows", rows);
+    int columnsSet = intSetting(settings, "columns", columns);
+    int minesSet = intSetting(settings, "mines", mines);
+    // a preset's name has to say what the board is (statistics are kept
+    // by it), so any other size is a custom game
+    if (!preset.equals("custom") && (rowsSet != rows || columnsSet != columns
+        || minesSet != mines)) {
+      throw new IllegalArgumentException("The " + preset + " preset is " + rows + " x "
+          + columns + " with " + mines + " mines; use --preset custom for other sizes");
+    }
+    String seed = settings.getProperty("seed");
+    LaunchConfig config = new LaunchConfig(preset, rowsSet, columnsSet, minesSet,
+        seed != null,
+        seed == null ? 0 : longSetting(settings, "seed"),
+        settings.getProperty("renderer", "window").trim().toLowerCase(Locale.ROOT),
+        doubleSetting(settings, "tick", 1.0 / 30));
+    config.saveDir = settings.getProperty("save");
+    config.statsDir = settings.getProperty("stats");
+    return config;
+  }
+
+  // the rows, columns and mines of a named preset, or null for custom
+  static int[] presetSize(String preset) {
+    if (preset.equals("beginner")) {
+      return new int[] {9, 9, 10};
+    }
+    else if (preset.equals("intermediate")) {
+      return new int[] {16, 16, 40};
+    }
+    else if (preset.equals("expert")) {
+      return new int[] {30, 16, 99};
+    }
+    return null;
+  }
+
+  // the whole number setting with the given name, or otherwise if it isn't set
+  static int intSetting(Properties settings, String name, int otherwise) {
+    String value = settings.getProperty(name);
+    if (value == null) {
+      return otherwise;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " has to be a whole number, not " + value);
+    }
+  }
+
+  // the long setting with the given name, which is set
+  static long longSetting(Properties settings, String name) {
+    String value = settings.getProperty(name);
+    try {
+      return Long.parseLong(value.trim());
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " has to be a whole number, not " + value);
+    }
+  }
+
+  // the number setting with the given name, or otherwise if it isn't set
+  static double doubleSetting(Properties settings, String name, double otherwise) {
+    String value = settings.getProperty(name);
+    if (value == null) {
+      return otherwise;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " has to be a number, not " + value);
+    }
+  }
+
+  // a new game with these settings
+  MineSweeper makeGame() {
+    if (this.seeded) {
+      return new MineSweeper(this.rows, this.columns, this.seed, this.mines,
+          new SquareTopology());
+    }
+    else {
+      return new MineSweeper(this.rows, this.columns, new Random(), this.mines);
+    }
+  }
+}
+
+// to start a game from the command line, with no questions asked:
+//   java Launcher --preset expert --seed 42
+//   java Launcher --config game.properties --renderer headless
+//   java Launcher --preset custom --rows 1000 --columns 1000 --mines 150000 --renderer terminal
+//   java Launcher --save saves/expert (resumes the game saved there, if any)
+//   java Launcher --stats stats (records every finished game there)
+class Launcher {
+  public static void main(String[] args) {
+    LaunchConfig config;
+    try {
+      config = LaunchConfig.parse(args);
+    }
+    catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Options: --preset (beginner, intermediate, expert, custom), --rows,"
+          + " --columns, --mines, --seed, --renderer (window, terminal, headless), --tick, --save,"
+          + " --stats, --config");
+      System.exit(2);
+      return;
+    }
+    launch(config);
+  }
+
+  // starts the game the config describes, returning it
+  static MineSweeper launch(LaunchConfig config) {
+    return launch(config, System.in, System.out);
+  }
+
+  // starts the game the config describes, a headless one taking its
+  // commands from in and answering on out, returning it
+  static MineSweeper launch(LaunchConfig config, InputStream in, PrintStream out) {
+    MineSweeper world = null;
+    if (config.saveDir != null) {
+      try {
+        world = Autosave.resume(Paths.get(config.saveDir), new SquareTopology());
+      }
+      catch (IOException e) {
+        System.err.println("Can't resume the saved game: " + e.getMessage());
+      }
+    }
+    if (world == null) {
+      world = config.makeGame();
+    }
+    if (config.saveDir != null) {
+      Autosave save = new Autosave(world, Paths.get(config.saveDir));
+      Runtime.getRuntime().addShutdownHook(new Thread(save::close));
+    }
+    if (config.statsDir != null) {
+      try {
+        StatsStore stats = new StatsStore(Paths.get(config.statsDir));
+        world.addListener(new StatsRecorder(stats, world, config.preset, config.seeded,
+            config.seed));
+        Runtime.getRuntime().addShutdownHook(new Thread(stats::close));
+      }
+      catch (IOException e) {
+        System.err.println("Can't keep statistics: " + e.getMessage());
+      }
+    }
+    world.tickSeconds = config.tickRate;
+    if (config.renderer.equals("window")) {
+      world.bigBang(world.sceneWidth(), world.sceneHeight() + 50, config.tickRate);
+    }
+    else if (config.renderer.equals("terminal")) {
+      runInTerminal(world, config);
+    }
+    else {
+      out.println("Started a " + world.rows + "x" + world.columns + " board with "
+          + world.mineCap + " mines");
+      new HeadlessRunner(world, out).run(in, (long) (config.tickRate * 1e9));
+    }
+    return world;
+  }
+
+  // plays the game in this terminal, with keys read one at a time
+  static void runInTerminal(MineSweeper world, LaunchConfig config) {
+    int width = envSize("COLUMNS", 80);
+    int height = envSize("LINES", 24) - 1;
+    TerminalFrontend frontend = new TerminalFrontend(world, width, height);
+    stty("raw -echo");
+    try {
+      frontend.run(System.in, System.out, (long) (config.tickRate * 1e9));
+    }
+    catch (IOException e) {
+      System.err.println("Lost the terminal: " + e.getMessage());
+    }
+    finally {
+      stty("sane");
+      System.out.print(TerminalFrontend.ESC + "[0m" + TerminalFrontend.ESC + "[2J"
+          + TerminalFrontend.ESC + "[H");
+      System.out.flush();
+    }
+  }
+
+  // a terminal size from the environment, or otherwise if it isn't there
+  static int envSize(String name, int otherwise) {
+    try {
+      return Math.max(2, Integer.parseInt(System.getenv(name)));
+    }
+    catch (NumberFormatException e) {
+      return otherwise;
+    }
+  }
+
+  // sets the terminal's mode, if there is a terminal to set
+  static void stty(String mode) {
+    try {
+      new ProcessBuilder("sh", "-c", "stty " + mode + " < /dev/tty 2> /dev/null").inheritIO()
+          .start()
+          .waitFor();
+    }
+    catch (IOException e) {
+      // no stty: keys arrive a line at a time instead
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
+
+// to play a game in a text terminal: the board is shown through a
+// viewport that scrolls with the cursor, and each frame only sends the
+// terminal cells that changed since the last one, each addressed with
+// a cursor move unless it follows the one before
+// the viewport runs along rows the way the window does, so screen
+// columns are board rows and screen lines are board columns
+class TerminalFrontend {
+  static final String ESC = "\u001b";
+  // colours for the numbers 1 to 8, then hidden, flag, mine and hint
+  static final int[] COLORS = {0, 34, 32, 31, 35, 33, 36, 30, 37, 37, 31, 31, 32};
+  static final int HIDDEN_STYLE = 9;
+  static final int FLAG_STYLE = 10;
+  static final int MINE_STYLE = 11;
+  static final int HINT_STYLE = 12;
+  // added to a style for the cell under the cursor
+  static final int CURSOR = 16;
+  MineSweeper game;
+  // terminal columns, and lines for the board (one more for the status)
+  int width;
+  int height;
+  int viewRow;
+  int viewColumn;
+  int cursorRow;
+  int cursorColumn;
+  // what the terminal shows now, line by line
+  char[] screen;
+  byte[] styles;
+  // where the terminal cursor is while a frame is written, and its style
+  int atX;
+  int atY;
+  int atStyle;
+  // how far into an arrow key's escape sequence the input is
+  int escape;
+  boolean running;
+
+  TerminalFrontend(MineSweeper game, int width, int height) {
+    this.game = game;
+    this.width = width;
+    this.height = height;
+    this.screen = new char[width * (height + 1)];
+    this.styles = new byte[width * (height + 1)];
+    // nothing matches, so the first frame draws everything
+    Arrays.fill(this.screen, '\0');
+    this.running = true;
+  }
+
+  // what a frame has to send to bring the terminal up to date, which is
+  // nothing at all if nothing changed
+  String frame() {
+    StringBuilder out = new StringBuilder();
+    if (this.screen[0] == '\0') {
+      out.append(ESC).append("[0m").append(ESC).append("[2J");
+    }
+    this.atX = -1;
+    this.atY = -1;
+    this.atStyle = -1;
+    for (int y = 0; y < this.height; y++) {
+      for (int x = 0; x < this.width; x++) {
+        int r = this.viewRow + x;
+        int c = this.viewColumn + y;
+        if (r >= this.game.rows || c >= this.game.columns) {
+          this.put(out, x, y, ' ', 0);
+        }
+        else {
+          int cursor = r == this.cursorRow && c == this.cursorColumn ? CURSOR : 0;
+          this.putCell(out, x, y, this.game.cellAt(r * this.game.columns + c), cursor);
+        }
+      }
+    }
+    String status = this.status();
+    for (int x = 0; x < this.width; x++) {
+      this.put(out, x, this.height, x < status.length() ? status.charAt(x) : ' ', 0);
+    }
+    if (out.length() > 0 && this.atStyle != 0) {
+      out.append(ESC).append("[0m");
+    }
+    return out.toString();
+  }
+
+  // draws a board cell
+  void putCell(StringBuilder out, int x, int y, Cell cell, int cursor) {
+    if (!cell.isRevealed()) {
+      if (cell.hasFlag()) {
+        this.put(out, x, y, 'F', FLAG_STYLE + cursor);
+      }
+      else if (this.hinted(cell)) {
+        this.put(out, x, y, '?', HINT_STYLE + cursor);
+      }
+      else {
+        this.put(out, x, y, '.', HIDDEN_STYLE + cursor);
+      }
+    }
+    else if (cell.hasMine) {
+      this.put(out, x, y, '*', MINE_STYLE + cursor);
+    }
+    else {
+      int count = cell.countMines();
+      this.put(out, x, y, count == 0 ? ' ' : (char) ('0' + count), count + cursor);
+    }
+  }
+
+  // is the cell the one the game's hint points to?
+  boolean hinted(Cell cell) {
+    Hint hint = this.game.hint;
+    return hint != null && hint.cell >= 0 && this.game.cellAt(hint.cell) == cell;
+  }
+
+  // sends one terminal cell, if it's changed
+  void put(StringBuilder out, int x, int y, char glyph, int style) {
+    int k = y * this.width + x;
+    if (this.screen[k] == glyph && this.styles[k] == style) {
+      return;
+    }
+    this.screen[k] = glyph;
+    this.styles[k] = (byte) style;
+    if (x != this.atX || y != this.atY) {
+      out.append(ESC).append('[').append(y + 1).append(';').append(x + 1).append('H');
+    }
+    if (style != this.atStyle) {
+      out.append(ESC).append("[0");
+      if (COLORS[style % CURSOR] != 0) {
+        out.append(';').append(COLORS[style % CURSOR]);
+      }
+      if (style >= CURSOR) {
+        out.append(";7");
+      }
+      out.append('m');
+      this.atStyle = style;
+    }
+    out.append(glyph);
+    this.atX = x + 1;
+    this.atY = y;
+  }
+
+  // the status line: flags left, the clock, and how the game ended
+  String status() {
+    String ending = "";
+    if (this.game.gameOver) {
+      ending = "  You clicked a mine :(  r to restart";
+    }
+    else if (this.game.win) {
+      ending = "  You win";
+    }
+    return "Flags " + this.game.flagCount + "  " + this.game.minutesAsString() + ":"
+        + this.game.secondsAsString() + "  (" + this.cursorRow + ", " + this.cursorColumn + ")"
+        + ending;
+  }
+
+  // handles one byte of input: arrows or hjkl move the cursor (HJKL a
+  // screen at a time), space reveals, f flags, d chords, u and y undo
+  // and redo, ? asks for a hint (h being taken), r restarts and q quits
+  void key(int b) {
+    if (this.escape == 1) {
+      this.escape = b == '[' ? 2 : 0;
+      return;
+    }
+    if (this.escape == 2) {
+      this.escape = 0;
+      if (b == 'A') {
+        b = 'k';
+      }
+      else if (b == 'B') {
+        b = 'j';
+      }
+      else if (b == 'C') {
+        b = 'l';
+      }
+      else if (b == 'D') {
+        b = 'h';
+      }
+      else {
+        return;
+      }
+    }
+    if (b == 27) {
+      this.escape = 1;
+    }
+    else if (b == 'h' || b == 'l' || b == 'k' || b == 'j') {
+      this.moveCursor(b == 'h' ? -1 : b == 'l' ? 1 : 0, b == 'k' ? -1 : b == 'j' ? 1 : 0);
+    }
+    else if (b == 'H' || b == 'L' || b == 'K' || b == 'J') {
+      this.moveCursor(b == 'H' ? -this.width : b == 'L' ? this.width : 0,
+          b == 'K' ? -this.height : b == 'J' ? this.height : 0);
+    }
+    else if (b == ' ' || b == '\r' || b == '\n') {
+      this.move(MoveKind.REVEAL);
+    }
+    else if (b == 'f') {
+      this.move(MoveKind.FLAG);
+    }
+    else if (b == 'd') {
+      this.move(MoveKind.CHORD);
+    }
+    else if (b == 'u' || b == 'y' || b == 'r') {
+      this.game.onKeyEvent(String.valueOf((char) b));
+    }
+    else if (b == '?') {
+      this.game.onKeyEvent("h");
+    }
+    else if (b == 'q' || b == 3) {
+      this.running = false;
+    }
+  }
+
+  // makes a move on the cell under the cursor
+  void move(MoveKind kind) {
+    this.game.applyMove(new Move(kind, this.cursorRow, this.cursorColumn));
+    this.game.flushEvents();
+  }
+
+  // moves the cursor, scrolling the viewport to keep it in sight
+  void moveCursor(int dr, int dc) {
+    this.cursorRow = Math.max(0, Math.min(this.game.rows - 1, this.cursorRow + dr));
+    this.cursorColumn = Math.max(0, Math.min(this.game.columns - 1, this.cursorColumn + dc));
+    if (this.cursorRow < this.viewRow) {
+      this.viewRow = this.cursorRow;
+    }
+    else if (this.cursorRow >= this.viewRow + this.width) {
+      this.viewRow = this.cursorRow - this.width + 1;
+    }
+    if (this.cursorColumn < this.viewColumn) {
+      this.viewColumn = this.cursorColumn;
+    }
+    else if (this.cursorColumn >= this.viewColumn + this.height) {
+      this.viewColumn = this.cursorColumn - this.height + 1;
+    }
+  }
+
+  // runs the game until q: each frame takes whatever keys have come in,
+  // ticks the game, and sends what changed
+  void run(InputStream in, OutputStream out, long frameNanos) throws IOException {
+    long next = System.nanoTime();
+    while (this.running) {
+      while (this.running && in.available() > 0) {
+        int b = in.read();
+        if (b < 0) {
+          this.running = false;
+        }
+        else {
+          this.key(b);
+        }
+      }
+      this.game.onTick();
+      String frame = this.frame();
+      if (!frame.isEmpty()) {
+        out.write(frame.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+      }
+      next += frameNanos;
+      long wait = next - System.nanoTime();
+      if (wait > 0) {
+        try {
+          Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          this.running = false;
+        }
+      }
+      else {
+        next = System.nanoTime();
+      }
+    }
+  }
+}
+
+// to play a game with nothing drawn, for scripts and bots: commands come
+// in a line at a time, each answered with the game's status, while the
+// game ticks in real time between them
+//   reveal R C, flag R C, chord R C   a move on the cell at row R, column C
+//   undo, redo, restart               what the u, y and r keys do
+//   board                             the board as the player sees it, a
+//                                     line per row, before the status
+//   quit                              stops, as does the end of the input
+// a thread waits on the input and queues its lines, so ticks never wait
+// for a command
+class HeadlessRunner {
+  // queued once the input runs out; compared by identity, so no line
+  // read can be mistaken for it
+  static final String END = new String("end of input");
+  MineSweeper game;
+  PrintStream out;
+  LinkedBlockingQueue<String> lines;
+  boolean running;
+
+  HeadlessRunner(MineSweeper game, PrintStream out) {
+    this.game = game;
+    this.out = out;
+    this.lines = new LinkedBlockingQueue<String>();
+    this.running = true;
+  }
+
+  // runs the game until quit or the end of the input, answering each
+  // command as it comes and ticking once a frame
+  void run(InputStream in, long frameNanos) {
+    Thread reader = new Thread(() -> this.read(in), "headless-input");
+    reader.setDaemon(true);
+    reader.start();
+    long next = System.nanoTime() + frameNanos;
+    while (this.running) {
+      long wait = next - System.nanoTime();
+      if (wait <= 0) {
+        this.game.onTick();
+        next += frameNanos;
+        if (next < System.nanoTime()) {
+          next = System.nanoTime() + frameNanos;
+        }
+        continue;
+      }
+      String line;
+      try {
+        line = this.lines.poll(wait, TimeUnit.NANOSECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      if (line == END) {
+        this.running = false;
+      }
+      else if (line != null) {
+        String answer = this.command(line);
+        if (answer != null) {
+          this.out.println(answer);
+        }
+      }
+    }
+    this.out.flush();
+  }
+
+  // queues the lines of the input, then END
+  void read(InputStream in) {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+        StandardCharsets.UTF_8));
+    try {
+      String line = reader.readLine();
+      while (line != null) {
+        this.lines.add(line);
+        line = reader.readLine();
+      }
+    }
+    catch (IOException e) {
+      // a broken input ends the game the same way as a finished one
+    }
+    this.lines.add(END);
+  }
+
+  // carries out one command, giving its answer (null for a blank line)
+  String command(String line) {
+    String[] words = line.trim().split("\\s+");
+    String name = words[0].toLowerCase(Locale.ROOT);
+    if (name.isEmpty()) {
+      return null;
+    }
+    if (name.equals("reveal") || name.equals("flag") || name.equals("chord")) {
+      if (words.length != 3) {
+        return "error: " + name + " needs a row and a column";
+      }
+      try {
+        MoveKind kind = name.equals("reveal") ? MoveKind.REVEAL
+            : name.equals("flag") ? MoveKind.FLAG : MoveKind.CHORD;
+        this.game.applyMove(new Move(kind, Integer.parseInt(words[1]),
+            Integer.parseInt(words[2])));
+        this.game.flushEvents();
+      }
+      catch (NumberFormatException e) {
+        return "error: " + name + " needs a row and a column, not " + words[1] + " "
+            + words[2];
+      }
+    }
+    else if (name.equals("undo")) {
+      this.game.onKeyEvent("u");
+    }
+    else if (name.equals("redo")) {
+      this.game.onKeyEvent("y");
+    }
+    else if (name.equals("restart")) {
+      this.game.onKeyEvent("r");
+    }
+    else if (name.equals("board")) {
+      return this.board() + this.status();
+    }
+    else if (name.equals("quit")) {
+      this.running = false;
+    }
+    else {
+      return "error: unknown command " + name;
+    }
+    return this.status();
+  }
+
+  // what the player can see, a line per row: . covered, F flagged,
+  // * a revealed mine, or a revealed cell's number
+  String board() {
+    StringBuilder text = new StringBuilder();
+    for (int r = 0; r < this.game.rows; r++) {
+      for (int c = 0; c < this.game.columns; c++) {
+        Cell cell = this.game.cellAt(r * this.game.columns + c);
+        if (!cell.isRevealed()) {
+          text.append(cell.hasFlag() ? 'F' : '.');
+        }
+        else {
+          text.append(cell.hasMine ? '*' : (char) ('0' + cell.countMines()));
+        }
+      }
+      text.append('\n');
+    }
+    return text.toString();
+  }
+
+  // whether the game is on, won or lost, the flags left and the clock
+  String status() {
+    String state = this.game.gameOver ? "lost" : this.game.win ? "won" : "playing";
+    return state + " flags " + this.game.flagCount + " time " + this.game.minutesAsString()
+        + ":" + this.game.secondsAsString();
+  }
+}
+
+// to save a game as it's played without slowing it down: every batch
+// of events is handed to a background thread, which appends it to a
+// journal (syncing once per group of batches that arrive together) and
+// now and then folds the journal into a full snapshot
+// a saved game is resumed from its snapshot plus the journal after it
+class Autosave implements IBoardListener {
+  static final String SNAPSHOT = "snapshot.bin";
+  static final String JOURNAL = "journal.bin";
+  // how big the journal may get before it's folded into a snapshot
+  static final long DEFAULT_COMPACT_BYTES = 1 << 20;
+  MineSweeper game;
+  Path dir;
+  long compactBytes;
+  // entries waiting for the writer; never full, so the game never waits
+  LinkedBlockingQueue<SaveEntry> queue;
+  Thread writer;
+  // why saving stopped, if it did
+  volatile IOException failure;
+  boolean closed;
+  // the writer's own copy of the game, kept up to date from the
+  // entries alone, so snapshots never have to look at the real board
+  SavedGame shadow;
+  FileChannel journal;
+  long journalBytes;
+
+  Autosave(MineSweeper game, Path dir) {
+    this(game, dir, DEFAULT_COMPACT_BYTES);
+  }
+
+  Autosave(MineSweeper game, Path dir, long compactBytes) {
+    this.game = game;
+    this.dir = dir;
+    this.compactBytes = compactBytes;
+    this.queue = new LinkedBlockingQueue<SaveEntry>();
+    this.shadow = SavedGame.of(game);
+    this.writer = new Thread(this::write, "autosave");
+    this.writer.setDaemon(true);
+    this.writer.start();
+    game.addListener(this);
+  }
+
+  // copies a batch for the writer; this is all the game thread does
+  public void onEvents(long[] events, int count) {
+    if (this.closed || this.failure != null) {
+      return;
+    }
+    int[] mines = null;
+    // a restart is always the first event of its batch
+    if (count > 0 && BoardEvents.kind(events[0]) == BoardEvents.RESTARTED) {
+      mines = this.game.mines.toArray();
+    }
+    this.queue.offer(new SaveEntry(this.game.minutes, this.game.seconds, mines,
+        Arrays.copyOf(events, count)));
+  }
+
+  // waits until everything handed to the writer so far is on disk
+  void flush() {
+    CountDownLatch done = new CountDownLatch(1);
+    SaveEntry marker = new SaveEntry(0, 0, null, new long[0]);
+    marker.done = done;
+    this.queue.offer(marker);
+    try {
+      while (this.failure == null && this.writer.isAlive()
+          && !done.await(10, TimeUnit.MILLISECONDS)) {
+        // keeps waiting while the writer is still going
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // saves the clock, writes a last snapshot and stops the writer
+  void close() {
+    if (this.closed) {
+      return;
+    }
+    this.game.removeListener(this);
+    this.queue.offer(new SaveEntry(this.game.minutes, this.game.seconds, null, new long[0]));
+    this.closed = true;
+    this.queue.offer(SaveEntry.CLOSE);
+    try {
+      this.writer.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // the writer thread: appends whatever has arrived, syncs once for
+  // all of it, and compacts once the journal is big enough
+  void write() {
+    ArrayList<SaveEntry> batch = new ArrayList<SaveEntry>();
+    try {
+      Files.createDirectories(this.dir);
+      this.journal = FileChannel.open(this.dir.resolve(JOURNAL), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      // the shadow already has whatever the old journal held
+      this.compact();
+      boolean closing = false;
+      while (!closing) {
+        batch.add(this.queue.take());
+        this.queue.drainTo(batch);
+        ArrayList<CountDownLatch> waiting = new ArrayList<CountDownLatch>();
+        for (SaveEntry entry : batch) {
+          if (entry == SaveEntry.CLOSE) {
+            closing = true;
+          }
+          else if (entry.done != null) {
+            waiting.add(entry.done);
+          }
+          else {
+            this.append(entry);
+            this.shadow.apply(entry);
+          }
+        }
+        batch.clear();
+        this.journal.force(false);
+        if (closing || this.journalBytes > this.compactBytes) {
+          this.compact();
+        }
+        for (CountDownLatch done : waiting) {
+          done.countDown();
+        }
+      }
+    }
+    catch (IOException e) {
+      this.failure = e;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      try {
+        if (this.journal != null) {
+          this.journal.close();
+        }
+      }
+      catch (IOException e) {
+        if (this.failure == null) {
+          this.failure = e;
+        }
+      }
+    }
+  }
+
+  // adds an entry to the end of the journal, as its length, a checksum
+  // and then the entry, so a torn write at the end can be spotted
+  void append(SaveEntry entry) throws IOException {
+    byte[] payload = entry.encode();
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+    buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+    while (buffer.hasRemaining()) {
+      this.journal.write(buffer);
+    }
+    this.journalBytes += 8 + payload.length;
+  }
+
+  // writes the shadow as the new snapshot, then empties the journal
+  // the snapshot replaces the old one in one move, so a crash leaves
+  // either the old snapshot or the new one, and replaying a journal
+  // the snapshot already covers changes nothing
+  void compact() throws IOException {
+    Path temp = this.dir.resolve(SNAPSHOT + ".tmp");
+    try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(this.shadow.encode());
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+      out.force(true);
+    }
+    Files.move(temp, this.dir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    this.journal.truncate(0);
+    this.journal.force(true);
+    this.journalBytes = 0;
+  }
+
+  // the game saved in dir, from its snapshot and as much of the journal
+  // as made it to disk whole, or null if no game was saved there
+  static MineSweeper resume(Path dir, ITopology topology) throws IOException {
+    Path snapshot = dir.resolve(SNAPSHOT);
+    if (!Files.exists(snapshot)) {
+      return null;
+    }
+    SavedGame saved = SavedGame.decode(ByteBuffer.wrap(Files.readAllBytes(snapshot)));
+    Path journal = dir.resolve(JOURNAL);
+    if (Files.exists(journal)) {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journal));
+      while (buffer.remaining() >= 8) {
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+          break;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+        saved.apply(SaveEntry.decode(ByteBuffer.wrap(payload)));
+      }
+    }
+    return saved.restore(topology);
+  }
+}
+
+// to represent one batch of events on its way to the journal, with
+// the clock when it happened and, after a restart, the new mines
+class SaveEntry {
+  // tells the writer to stop
+  static final SaveEntry CLOSE = new SaveEntry(0, 0, null, new long[0]);
+  int minutes;
+  int seconds;
+  int[] mines;
+  long[] events;
+  // set on markers that someone is waiting on
+  CountDownLatch done;
+
+  SaveEntry(int minutes, int seconds, int[] mines, long[] events) {
+    this.minutes = minutes;
+    this.seconds = seconds;
+    this.mines = mines;
+    this.events = events;
+  }
+
+  // this entry as bytes: the clock, the mines (-1 for none) and the events
+  byte[] encode() {
+    int mineCount = this.mines == null ? 0 : this.mines.length;
+    ByteBuffer buffer = ByteBuffer.allocate(16 + 4 * mineCount + 8 * this.events.length);
+    buffer.putInt(this.minutes).putInt(this.seconds);
+    buffer.putInt(this.mines == null ? -1 : mineCount);
+    for (int k = 0; k < mineCount; k++) {
+      buffer.putInt(this.mines[k]);
+    }
+    buffer.putInt(this.events.length);
+    for (long event : this.events) {
+      buffer.putLong(event);
+    }
+    return buffer.array();
+  }
+
+  // the entry encoded in the buffer
+  static SaveEntry decode(ByteBuffer buffer) {
+    int minutes = buffer.getInt();
+    int seconds = buffer.getInt();
+    int mineCount = buffer.getInt();
+    int[] mines = null;
+    if (mineCount >= 0) {
+      mines = new int[mineCount];
+      for (int k = 0; k < mineCount; k++) {
+        mines[k] = buffer.getInt();
+      }
+    }
+    long[] events = new long[buffer.getInt()];
+    for (int k = 0; k < events.length; k++) {
+      events[k] = buffer.getLong();
+    }
+    return new SaveEntry(minutes, seconds, mines, events);
+  }
+}
+
+// to represent everything needed to pick a game back up: its size,
+// clock and status, where the mines are, and which cells are revealed
+// or flagged
+class SavedGame {
+  static final int MAGIC = 0x4D535356;
+  static final byte REVEALED = 1;
+  static final byte FLAGGED = 2;
+  int rows;
+  int columns;
+  int mineCap;
+  int minutes;
+  int seconds;
+  // as MoveHistory keeps it
+  int status;
+  int[] mines;
+  // REVEALED and FLAGGED bits for every cell
+  byte[] cells;
+
+  SavedGame(int rows, int columns, int mineCap, int minutes, int seconds, int status,
+      int[] mines, byte[] cells) {
+    this.rows = rows;
+    this.columns = columns;
+    this.mineCap = mineCap;
+    this.minutes = minutes;
+    this.seconds = seconds;
+    this.status = status;
+    this.mines = mines;
+    this.cells = cells;
+  }
+
+  // how the given game stands right now
+  static SavedGame of(MineSweeper game) {
+    byte[] cells = new byte[game.rows * game.columns];
+    for (int r = 0; r < game.rows; r++) {
+      ArrayList<Cell> row = game.board.get(r);
+      for (int c = 0; c < game.columns; c++) {
+        Cell cell = row.get(c);
+        cells[r * game.columns + c] = (byte) ((cell.isRevealed() ? REVEALED : 0)
+            | (cell.hasFlag() ? FLAGGED : 0));
+      }
+    }
+    return new SavedGame(game.rows, game.columns, game.mineCap, game.minutes, game.seconds,
+        game.status(), game.mines.toArray(), cells);
+  }
+
+  // plays a journal entry onto this game; every event just sets a
+  // cell or the status, so playing one twice changes nothing
+  void apply(SaveEntry entry) {
+    this.minutes = entry.minutes;
+    this.seconds = entry.seconds;
+    if (entry.mines != null) {
+      this.mines = entry.mines;
+      Arrays.fill(this.cells, (byte) 0);
+      this.status = MoveHistory.PLAYING;
+    }
+    for (long event : entry.events) {
+      int kind = BoardEvents.kind(event);
+      int i = BoardEvents.index(event);
+      if (kind == BoardEvents.REVEALED) {
+        this.cells[i] |= REVEALED;
+      }
+      else if (kind == BoardEvents.COVERED) {
+        this.cells[i] &= ~REVEALED;
+      }
+      else if (kind == BoardEvents.FLAGGED) {
+        this.cells[i] |= FLAGGED;
+      }
+      else if (kind == BoardEvents.UNFLAGGED) {
+        this.cells[i] &= ~FLAGGED;
+      }
+      else if (kind == BoardEvents.WON) {
+        this.status = MoveHistory.WON;
+      }
+      else if (kind == BoardEvents.LOST) {
+        this.status = MoveHistory.LOST;
+      }
+      else if (kind == BoardEvents.RESUMED) {
+        this.status = MoveHistory.PLAYING;
+      }
+    }
+  }
+
+  // this game as bytes, ending in a checksum
+  byte[] encode() {
+    ByteBuffer buffer = ByteBuffer.allocate(36 + 4 * this.mines.length + this.cells.length);
+    buffer.putInt(MAGIC).putInt(this.rows).putInt(this.columns).putInt(this.mineCap)
+        .putInt(this.minutes).putInt(this.seconds).putInt(this.status)
+        .putInt(this.mines.length);
+    for (int i : this.mines) {
+      buffer.putInt(i);
+    }
+    buffer.put(this.cells);
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) crc.getValue());
+    return buffer.array();
+  }
+
+  // the game encoded in the buffer
+  static SavedGame decode(ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < 36) {
+      throw new IOException("Snapshot is too short");
+    }
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), 0, buffer.limit() - 4);
+    if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+      throw new IOException("Snapshot is corrupt");
+    }
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a saved game");
+    }
+    int rows = buffer.getInt();
+    int columns = buffer.getInt();
+    int mineCap = buffer.getInt();
+    int minutes = buffer.getInt();
+    int seconds = buffer.getInt();
+    int status = buffer.getInt();
+    int[] mines = new int[buffer.getInt()];
+    for (int k = 0; k < mines.length; k++) {
+      mines[k] = buffer.getInt();
+    }
+    byte[] cells = new byte[rows * columns];
+    buffer.get(cells);
+    return new SavedGame(rows, columns, mineCap, minutes, seconds, status, mines, cells);
+  }
+
+  // a game that stands just like this one
+  MineSweeper restore(ITopology topology) {
+    PackedBoard packed = new PackedBoard(this.rows, this.columns);
+    for (int i : this.mines) {
+      packed.placeMine(i / this.columns, i % this.columns);
+    }
+    MineSweeper game = new MineSweeper(packed, topology);
+    // flags go down first, since a revealed cell can't be flagged but
+    // a lost game reveals flagged mines
+    for (int i = 0; i < this.cells.length; i++) {
+      if ((this.cells[i] & FLAGGED) != 0) {
+        game.toggleFlag(i);
+      }
+    }
+    for (int i = 0; i < this.cells.length; i++) {
+      if ((this.cells[i] & REVEALED) != 0) {
+        game.revealIndex(i);
+      }
+    }
+    game.gameOver = this.status == MoveHistory.LOST;
+    game.win = this.status == MoveHistory.WON;
+    game.minutes = this.minutes;
+    game.seconds = this.seconds;
+    return game;
+  }
+}
+
+// to represent a small overview of the whole board, drawn from a
+// pyramid of counts: level k splits the board into 2^k by 2^k blocks
+// and keeps how many cells of each block are revealed, and how many are
+// flagged and still covered (a lost game reveals flagged mines)
+// the pyramid starts at the first level with at most MAX_SIDE blocks
+// a side, so a change touches one block per level, and drawing costs
+// the same however big the board is
+class Minimap implements IBoardListener {
+  // the most blocks drawn along either side
+  static final int MAX_SIDE = 128;
+  // how many pixels the minimap takes along its longer side
+  static final int PIXELS = 256;
+  int rows;
+  int columns;
+  // the level of the finest blocks kept
+  int base;
+  // blocks along each side, and the counts, for every level kept
+  // (base first), with blocks indexed by block row * block columns
+  // + block column
+  int[] levelRows;
+  int[] levelColumns;
+  int[][] revealed;
+  int[][] flagged;
+  // which cells the events have said are revealed, and which flagged,
+  // a bit per cell
+  long[] shownCells;
+  long[] flaggedCells;
+
+  Minimap(MineSweeper game) {
+    this.rows = game.rows;
+    this.columns = game.columns;
+    this.base = 0;
+    while (blocks(this.rows, this.base) > MAX_SIDE || blocks(this.columns, this.base) > MAX_SIDE) {
+      this.base += 1;
+    }
+    int top = this.base;
+    while (blocks(this.rows, top) > 1 || blocks(this.columns, top) > 1) {
+      top += 1;
+    }
+    int levels = top - this.base + 1;
+    this.levelRows = new int[levels];
+    this.levelColumns = new int[levels];
+    this.revealed = new int[levels][];
+    this.flagged = new int[levels][];
+    for (int k = 0; k < levels; k++) {
+      this.levelRows[k] = blocks(this.rows, this.base + k);
+      this.levelColumns[k] = blocks(this.columns, this.base + k);
+      this.revealed[k] = new int[this.levelRows[k] * this.levelColumns[k]];
+      this.flagged[k] = new int[this.levelRows[k] * this.levelColumns[k]];
+    }
+    this.shownCells = new long[(this.rows * this.columns + 63) >> 6];
+    this.flaggedCells = new long[this.shownCells.length];
+    // counts the cells into the finest level, then sums each level into the next
+    for (int r = 0; r < this.rows; r++) {
+      ArrayList<Cell> row = game.board.get(r);
+      for (int c = 0; c < this.columns; c++) {
+        int b = this.block(0, r, c);
+        int i = r * this.columns + c;
+        if (row.get(c).isRevealed()) {
+          this.revealed[0][b] += 1;
+          this.shownCells[i >> 6] |= 1L << i;
+        }
+        else if (row.get(c).hasFlag()) {
+          this.flagged[0][b] += 1;
+        }
+        if (row.get(c).hasFlag()) {
+          this.flaggedCells[i >> 6] |= 1L << i;
+        }
+      }
+    }
+    for (int k = 1; k < levels; k++) {
+      for (int br = 0; br < this.levelRows[k - 1]; br++) {
+        for (int bc = 0; bc < this.levelColumns[k - 1]; bc++) {
+          int from = br * this.levelColumns[k - 1] + bc;
+          int to = (br >> 1) * this.levelColumns[k] + (bc >> 1);
+          this.revealed[k][to] += this.revealed[k - 1][from];
+          this.flagged[k][to] += this.flagged[k - 1][from];
+        }
+      }
+    }
+    game.addListener(this);
+  }
+
+  // how many blocks of 2^level cells it takes to cover n cells
+  static int blocks(int n, int level) {
+    return (int) (((long) n + (1L << level) - 1) >> level);
+  }
+
+  // the block of the given level (counted from base) that (r, c) is in
+  int block(int level, int r, int c) {
+    int shift = this.base + level;
+    return (r >> shift) * this.levelColumns[level] + (c >> shift);
+  }
+
+  // moves the counts of every block (r, c) is in
+  void update(int r, int c, int revealedBy, int flaggedBy) {
+    for (int k = 0; k < this.revealed.length; k++) {
+      int b = this.block(k, r, c);
+      this.revealed[k][b] += revealedBy;
+      this.flagged[k][b] += flaggedBy;
+    }
+  }
+
+  // keeps the pyramid up to date with the game
+  public void onEvents(long[] events, int count) {
+    for (int k = 0; k < count; k++) {
+      int kind = BoardEvents.kind(events[k]);
+      int i = BoardEvents.index(events[k]);
+      if (kind == BoardEvents.REVEALED || kind == BoardEvents.COVERED) {
+        this.change(i, kind == BoardEvents.REVEALED, isSet(this.flaggedCells, i));
+      }
+      else if (kind == BoardEvents.FLAGGED || kind == BoardEvents.UNFLAGGED) {
+        this.change(i, isSet(this.shownCells, i), kind == BoardEvents.FLAGGED);
+      }
+      else if (kind == BoardEvents.RESTARTED) {
+        // a new board starts with everything hidden
+        for (int l = 0; l < this.revealed.length; l++) {
+          Arrays.fill(this.revealed[l], 0);
+          Arrays.fill(this.flagged[l], 0);
+        }
+        Arrays.fill(this.shownCells, 0);
+        Arrays.fill(this.flaggedCells, 0);
+      }
+    }
+  }
+
+  // notes whether the cell at index i is now revealed and flagged,
+  // moving the counts of its blocks by what that changes
+  void change(int i, boolean shown, boolean flag) {
+    boolean wasShown = isSet(this.shownCells, i);
+    boolean wasCovered = isSet(this.flaggedCells, i) && !wasShown;
+    this.shownCells[i >> 6] = shown ? this.shownCells[i >> 6] | 1L << i
+        : this.shownCells[i >> 6] & ~(1L << i);
+    this.flaggedCells[i >> 6] = flag ? this.flaggedCells[i >> 6] | 1L << i
+        : this.flaggedCells[i >> 6] & ~(1L << i);
+    this.update(i / this.columns, i % this.columns, (shown ? 1 : 0) - (wasShown ? 1 : 0),
+        (flag && !shown ? 1 : 0) - (wasCovered ? 1 : 0));
+  }
+
+  // is bit i of the bits set?
+  static boolean isSet(long[] bits, int i) {
+    return (bits[i >> 6] & 1L << i) != 0;
+  }
+
+  // how many cells the block (br, bc) of the given level covers;
+  // blocks on the far edges can be cut short
+  int cellsIn(int level, int br, int bc) {
+    int side = 1 << (this.base + level);
+    return Math.min(side, this.rows - br * side) * Math.min(side, this.columns - bc * side);
+  }
+
+  // the colour of a block: white for revealed, red for flagged and gray
+  // for hidden, mixed by how many of its cells are each (a revealed cell
+  // is white even if it's flagged)
+  Color tileColor(int level, int br, int bc) {
+    int b = br * this.levelColumns[level] + bc;
+    int cells = this.cellsIn(level, br, bc);
+    int shown = this.revealed[level][b];
+    int flags = this.flagged[level][b];
+    int hidden = cells - shown - flags;
+    return new Color(
+        (shown * 255 + flags * 255 + hidden * 128) / cells,
+        (shown * 255 + hidden * 128) / cells,
+        (shown * 255 + hidden * 128) / cells);
+  }
+
+  // draws the finest level kept
+  WorldImage draw() {
+    return this.draw(0);
+  }
+
+  // draws the given level, one pixel per block, scaled up to PIXELS
+  // rows go across like they do on the board
+  WorldImage draw(int level) {
+    ComputedPixelImage image = new ComputedPixelImage(this.levelRows[level],
+        this.levelColumns[level]);
+    for (int br = 0; br < this.levelRows[level]; br++) {
+      for (int bc = 0; bc < this.levelColumns[level]; bc++) {
+        image.setPixel(br, bc, this.tileColor(level, br, bc));
+      }
+    }
+    return new ScaleImage(image, this.scale(level));
+  }
+
+  // how many pixels a block of the given level is drawn as
+  double scale(int level) {
+    return (double) PIXELS / Math.max(this.levelRows[level], this.levelColumns[level]);
+  }
+
+  // how many pixels a cell takes up on the drawn minimap
+  double pixelsPerCell() {
+    return this.scale(0) / (1 << this.base);
+  }
+
+  // the cell in the middle of the block under (x, y) on the drawn
+  // minimap of the given level, to jump the view to, or -1 if (x, y)
+  // is off the minimap
+  int jumpTarget(int level, double x, double y) {
+    int br = (int) Math.floor(x / this.scale(level));
+    int bc = (int) Math.floor(y / this.scale(level));
+    if (x < 0 || y < 0 || br >= this.levelRows[level] || bc >= this.levelColumns[level]) {
+      return -1;
+    }
+    int side = 1 << (this.base + level);
+    int r = Math.min(this.rows - 1, br * side + side / 2);
+    int c = Math.min(this.columns - 1, bc * side + side / 2);
+    return r * this.columns + c;
+  }
+}
+
+// to reveal openings a slice at a time, spreading out from where they
+// were clicked, so a huge opening never holds up a frame: each slice
+// takes cells off a breadth-first queue, reveals them, and queues the
+// neighbors of the zeros, until its time is up
+class RevealScheduler {
+  // openings this small are always revealed all at once
+  static final int MIN_CELLS = 4096;
+  // how long a slice may take, in nanoseconds
+  static final long SLICE_NANOS = 4000000L;
+  long sliceNanos;
+  // the cells queued to be revealed, from head on
+  IntList queue;
+  int head;
+  // a bit for every cell ever queued for the openings in progress,
+  // made once for the board, and the words of it that have bits set,
+  // so clearing it only touches those
+  long[] queued;
+  IntList dirty;
+
+  RevealScheduler() {
+    this.sliceNanos = SLICE_NANOS;
+    this.queue = new IntList();
+    this.dirty = new IntList();
+  }
+
+  // are there cells still to be revealed?
+  boolean pending() {
+    return this.head < this.queue.size;
+  }
+
+  // starts revealing the opening around the zero at index i
+  void seed(MineSweeper game, int i) {
+    int words = (game.rows * game.columns + 63) / 64;
+    if (this.queued == null || this.queued.length != words) {
+      this.queued = new long[words];
+      this.dirty.clear();
+    }
+    this.enqueue(i);
+  }
+
+  // queues the cell at index i, unless it's been queued before
+  void enqueue(int i) {
+    long bit = 1L << i;
+    long word = this.queued[i >>> 6];
+    if ((word & bit) == 0) {
+      if (word == 0) {
+        this.dirty.add(i >>> 6);
+      }
+      this.queued[i >>> 6] = word | bit;
+      this.queue.add(i);
+    }
+  }
+
+  // reveals queued cells for at most budget nanoseconds, or until none
+  // are left for a negative budget, but always at least MIN_CELLS
+  void run(MineSweeper game, long budget) {
+    long deadline = System.nanoTime() + Math.max(0, budget);
+    int done = 0;
+    int[] offsets = game.neighborTable.offsets;
+    int[] indices = game.neighborTable.indices;
+    while (this.pending()) {
+      int i = this.queue.get(this.head);
+      this.head += 1;
+      Cell cell = game.cellAt(i);
+      game.revealIndex(i);
+      if (!cell.hasMine && cell.countMines() == 0) {
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+          if (!game.cellAt(indices[k]).isRevealed()) {
+            this.enqueue(indices[k]);
+          }
+        }
+      }
+      done += 1;
+      if (budget >= 0 && done >= MIN_CELLS && (done & 255) == 0
+          && System.nanoTime() - deadline > 0) {
+        break;
+      }
+    }
+    if (!this.pending()) {
+      this.clear();
+    }
+    else if (this.head > this.queue.size / 2) {
+      // drops the revealed cells from the front of the queue
+      int left = this.queue.size - this.head;
+      System.arraycopy(this.queue.items, this.head, this.queue.items, 0, left);
+      this.queue.size = left;
+      this.head = 0;
+    }
+  }
+
+  // forgets every opening in progress
+  void clear() {
+    this.queue.clear();
+    this.head = 0;
+    if (this.queued != null) {
+      for (int k = 0; k < this.dirty.size; k++) {
+        this.queued[this.dirty.get(k)] = 0;
+      }
+    }
+    this.dirty.clear();
+  }
+}
+
+// to represent a set of cell indices with O(1) add, remove, lookup
+// and clear, and iteration over just its members: the members are
+// packed into dense, and sparse says where each one is in dense
+class IndexSet {
+  int[] dense;
+  int[] sparse;
+  int size;
+
+  // an empty set of indices from 0 up to universe
+  IndexSet(int universe) {
+    this.dense = new int[16];
+    this.sparse = new int[universe];
+    this.size = 0;
+  }
+
+  // is x in this set?
+  boolean contains(int x) {
+    int at = this.sparse[x];
+    return at < this.size && this.dense[at] == x;
+  }
+
+  // adds x, if it isn't in already
+  void add(int x) {
+    if (this.contains(x)) {
+      return;
+    }
+    if (this.size == this.dense.length) {
+      this.dense = Arrays.copyOf(this.dense, this.size * 2);
+    }
+    this.dense[this.size] = x;
+    this.sparse[x] = this.size;
+    this.size += 1;
+  }
+
+  // takes x out, if it's in, by moving the last member into its place
+  void remove(int x) {
+    if (!this.contains(x)) {
+      return;
+    }
+    int at = this.sparse[x];
+    int last = this.dense[this.size - 1];
+    this.dense[at] = last;
+    this.sparse[last] = at;
+    this.size -= 1;
+  }
+
+  // the k-th member, in no particular order
+  int get(int k) {
+    return this.dense[k];
+  }
+
+  // empties this set
+  void clear() {
+    this.size = 0;
+  }
+
+  // the members, sorted
+  int[] toArray() {
+    int[] members = Arrays.copyOf(this.dense, this.size);
+    Arrays.sort(members);
+    return members;
+  }
+}
+
+// to represent the frontier of a game: the covered cells next to a
+// revealed number, and the "active" numbers that still have covered
+// neighbors, along with what the player can see of every cell
+// a reveal or cover only changes the cell and its neighbors, so only
+// they are looked at again
+class Frontier {
+  // what the player can see of each cell, as visibleState gives it
+  int[] state;
+  IndexSet cells;
+  IndexSet numbers;
+  int hidden;
+  int revealedMines;
+  NeighborTable table;
+
+  Frontier(MineSweeper game) {
+    this.state = game.visibleState();
+    this.table = game.neighborTable;
+    this.cells = new IndexSet(this.state.length);
+    this.numbers = new IndexSet(this.state.length);
+    for (int i = 0; i < this.state.length; i++) {
+      if (this.state[i] == FrontierSolver.HIDDEN) {
+        this.hidden += 1;
+      }
+      else if (this.state[i] == FrontierSolver.MINE) {
+        this.revealedMines += 1;
+      }
+      this.place(i);
+    }
+  }
+
+  // catches up with a change to the cell at index i
+  void refresh(MineSweeper game, int i) {
+    Cell cell = game.cellAt(i);
+    int now = FrontierSolver.HIDDEN;
+    if (cell.isRevealed()) {
+      now = cell.hasMine ? FrontierSolver.MINE : cell.countMines();
+    }
+    this.hidden += (now == FrontierSolver.HIDDEN ? 1 : 0)
+        - (this.state[i] == FrontierSolver.HIDDEN ? 1 : 0);
+    this.revealedMines += (now == FrontierSolver.MINE ? 1 : 0)
+        - (this.state[i] == FrontierSolver.MINE ? 1 : 0);
+    this.state[i] = now;
+    this.place(i);
+    for (int k = this.table.offsets[i]; k < this.table.offsets[i + 1]; k++) {
+      this.place(this.table.indices[k]);
+    }
+  }
+
+  // puts the cell at index i in or out of the two sets
+  void place(int i) {
+    boolean covered = this.state[i] == FrontierSolver.HIDDEN;
+    boolean number = !covered && this.state[i] != FrontierSolver.MINE;
+    boolean onFrontier = false;
+    boolean active = false;
+    if (covered || number) {
+      for (int k = this.table.offsets[i]; k < this.table.offsets[i + 1]; k++) {
+        int n = this.state[this.table.indices[k]];
+        if (covered && n != FrontierSolver.HIDDEN && n != FrontierSolver.MINE) {
+          onFrontier = true;
+          break;
+        }
+        if (number && n == FrontierSolver.HIDDEN) {
+          active = true;
+          break;
+        }
+      }
+    }
+    if (onFrontier) {
+      this.cells.add(i);
+    }
+    else {
+      this.cells.remove(i);
+    }
+    if (active) {
+      this.numbers.add(i);
+    }
+    else {
+      this.numbers.remove(i);
+    }
+  }
+}
+
+// to represent one finished game
+class GameRecord {
+  String preset;
+  int rows;
+  int columns;
+  int mineCap;
+  boolean seeded;
+  long seed;
+  long timeMillis;
+  GameStatus result;
+  int threeBV;
+  int clicks;
+  // when it finished, in milliseconds since the epoch
+  long finishedAt;
+
+  GameRecord(String preset, int rows, int columns, int mineCap, boolean seeded, long seed,
+      long timeMillis, GameStatus result, int threeBV, int clicks, long finishedAt) {
+    this.preset = preset;
+    this.rows = rows;
+    this.columns = columns;
+    this.mineCap = mineCap;
+    this.seeded = seeded;
+    this.seed = seed;
+    this.timeMillis = timeMillis;
+    this.result = result;
+    this.threeBV = threeBV;
+    this.clicks = clicks;
+    this.finishedAt = finishedAt;
+  }
+
+  // which leaderboard this game goes on: the preset, or for custom
+  // games (and any that don't match their preset) the size and mines
+  String board() {
+    return StatsStore.board(this.preset, this.rows, this.columns, this.mineCap);
+  }
+}
+
+// to keep the statistics of every finished game: each game is appended
+// to a log as a fixed size record, and an index in memory keeps, for
+// each leaderboard, how many games were played and won and the sorted
+// winning times, so queries never touch the log
+// the index is saved now and then along with how many records it
+// covers, so opening the store only reads the records after that
+// games finished while playing are handed to a writer thread, so a move
+// never waits on the disk
+class StatsStore {
+  static final String LOG = "games.log";
+  static final String INDEX = "games.idx";
+  static final int RECORD_BYTES = 48;
+  // changed whenever the leaderboards are keyed differently, so an old
+  // index is rebuilt from the log
+  static final int INDEX_MAGIC = 0x4D535359;
+  // how many records may be appended before the index is saved again,
+  // at least; a big store waits for a quarter more records, so saving
+  // stays cheap per game and opening never reads much of the log
+  static final int SAVE_EVERY = 4096;
+  // winning times are kept as time << RECORD_BITS | record number, so
+  // sorting them sorts by time and still says which game it was
+  static final int RECORD_BITS = 28;
+  Path dir;
+  FileChannel log;
+  int records;
+  // the records the saved index covers, and how many were read from
+  // the log when opening
+  int indexed;
+  int replayed;
+  HashMap<String, BoardStats> boards;
+  // appends submitted games, one at a time, in the order they finished
+  ExecutorService writer;
+
+  StatsStore(Path dir) throws IOException {
+    this.dir = dir;
+    this.boards = new HashMap<String, BoardStats>();
+    Files.createDirectories(dir);
+    this.log = FileChannel.open(dir.resolve(LOG), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.records = (int) (this.log.size() / RECORD_BYTES);
+    // a record cut short by a crash is dropped
+    this.log.truncate((long) this.records * RECORD_BYTES);
+    this.indexed = this.loadIndex();
+    this.replay(this.indexed);
+    this.replayed = this.records - this.indexed;
+    // a daemon thread, so a store left open can't keep the program running
+    this.writer = Executors.newSingleThreadExecutor(task -> {
+      Thread thread = new Thread(task, "stats");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  // builds a finished game's record and adds it on the writer thread,
+  // without waiting for either
+  void submit(Supplier<GameRecord> record) {
+    this.writer.execute(() -> {
+      try {
+        this.add(record.get());
+      }
+      catch (IOException e) {
+        System.err.println("Can't record the game: " + e.getMessage());
+      }
+    });
+  }
+
+  // waits until every game submitted so far has been added
+  void flush() {
+    try {
+      this.writer.submit(() -> { }).get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException | RejectedExecutionException e) {
+      // the writer has stopped, so there's nothing left to wait for
+    }
+  }
+
+  // the leaderboard for the given preset and board; a board that isn't
+  // the preset's own size goes with the custom games of its size, so a
+  // preset's times are all for the same board
+  static String board(String preset, int rows, int columns, int mineCap) {
+    int[] size = LaunchConfig.presetSize(preset);
+    if (size != null && size[0] == rows && size[1] == columns && size[2] == mineCap) {
+      return preset;
+    }
+    return "custom " + rows + "x" + columns + "/" + mineCap;
+  }
+
+  // reads the saved index, returning how many records it covers, or 0
+  // (and no index) if it's missing, damaged or ahead of the log
+  int loadIndex() {
+    Path file = this.dir.resolve(INDEX);
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    CRC32 crc = new CRC32();
+    try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+        new BufferedInputStream(Files.newInputStream(file)), crc))) {
+      if (in.readInt() != INDEX_MAGIC) {
+        return 0;
+      }
+      int covered = in.readInt();
+      int count = in.readInt();
+      if (covered > this.records) {
+        return 0;
+      }
+      HashMap<String, BoardStats> loaded = new HashMap<String, BoardStats>();
+      for (int b = 0; b < count; b++) {
+        String name = in.readUTF();
+        BoardStats stats = new BoardStats();
+        stats.games = in.readInt();
+        stats.wins = in.readInt();
+        stats.times = new long[Math.max(16, stats.wins)];
+        for (int k = 0; k < stats.wins; k++) {
+          stats.times[k] = in.readLong();
+        }
+        stats.sorted = true;
+        loaded.put(name, stats);
+      }
+      // the checksum covers everything before it
+      int expected = (int) crc.getValue();
+      if (in.readInt() != expected) {
+        return 0;
+      }
+      this.boards = loaded;
+      return covered;
+    }
+    catch (IOException e) {
+      return 0;
+    }
+  }
+
+  // puts the records from the given one on into the index
+  void replay(int from) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 1024);
+    long position = (long) from * RECORD_BYTES;
+    int n = from;
+    while (n < this.records) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), (long) (this.records - n) * RECORD_BYTES));
+      BoardIO.fill(this.log, buffer, position);
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        this.index(decode(buffer), n);
+        n += 1;
+      }
+      position += buffer.limit();
+    }
+  }
+
+  // adds a finished game, returning its record number
+  synchronized int add(GameRecord record) throws IOException {
+    ByteBuffer buffer = encode(record);
+    long position = (long) this.records * RECORD_BYTES;
+    while (buffer.hasRemaining()) {
+      position += this.log.write(buffer, position);
+    }
+    int n = this.records;
+    this.records += 1;
+    this.index(record, n);
+    if (this.records - this.indexed >= Math.max(SAVE_EVERY, this.indexed / 4)) {
+      this.saveIndex();
+    }
+    return n;
+  }
+
+  // counts a game into the index
+  void index(GameRecord record, int n) {
+    BoardStats stats = this.boards.get(record.board());
+    if (stats == null) {
+      stats = new BoardStats();
+      this.boards.put(record.board(), stats);
+    }
+    stats.games += 1;
+    if (record.result == GameStatus.WON) {
+      long time = Math.min(record.timeMillis, (1L << (63 - RECORD_BITS)) - 1);
+      stats.addTime(time << RECORD_BITS | n);
+    }
+  }
+
+  // the record with the given number, read from the log
+  synchronized GameRecord record(int n) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+    BoardIO.fill(this.log, buffer, (long) n * RECORD_BYTES);
+    buffer.flip();
+    return decode(buffer);
+  }
+
+  // how many games were played on a leaderboard
+  synchronized int games(String board) {
+    BoardStats stats = this.boards.get(board);
+    return stats == null ? 0 : stats.games;
+  }
+
+  // the fraction of games on a leaderboard that were won
+  synchronized double winRate(String board) {
+    BoardStats stats = this.boards.get(board);
+    return stats == null || stats.games == 0 ? 0 : (double) stats.wins / stats.games;
+  }
+
+  // the fastest winning time on a leaderboard, or -1 if nobody's won
+  synchronized long bestTime(String board) {
+    return this.percentile(board, 0);
+  }
+
+  // the winning time that the given fraction of wins are at least as
+  // fast as (0.5 for the median), or -1 if nobody's won
+  synchronized long percentile(String board, double fraction) {
+    BoardStats stats = this.boards.get(board);
+    if (stats == null || stats.wins == 0) {
+      return -1;
+    }
+    int rank = Math.max(0, (int) Math.ceil(fraction * stats.wins) - 1);
+    return stats.sortedTimes()[Math.min(rank, stats.wins - 1)] >>> RECORD_BITS;
+  }
+
+  // the record numbers of the k fastest wins on a leaderboard, fastest first
+  synchronized int[] best(String board, int k) {
+    BoardStats stats = this.boards.get(board);
+    if (stats == null) {
+      return new int[0];
+    }
+    int[] best = new int[Math.min(k, stats.wins)];
+    long[] times = stats.sortedTimes();
+    for (int j = 0; j < best.length; j++) {
+      best[j] = (int) (times[j] & ((1L << RECORD_BITS) - 1));
+    }
+    return best;
+  }
+
+  // saves the index next to the log, replacing the old one in one move
+  synchronized void saveIndex() throws IOException {
+    Path temp = this.dir.resolve(INDEX + ".tmp");
+    CRC32 crc = new CRC32();
+    try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temp)), crc))) {
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(this.records);
+      out.writeInt(this.boards.size());
+      for (Map.Entry<String, BoardStats> entry : this.boards.entrySet()) {
+        BoardStats stats = entry.getValue();
+        out.writeUTF(entry.getKey());
+        out.writeInt(stats.games);
+        out.writeInt(stats.wins);
+        long[] times = stats.sortedTimes();
+        for (int k = 0; k < stats.wins; k++) {
+          out.writeLong(times[k]);
+        }
+      }
+      out.flush();
+      out.writeInt((int) crc.getValue());
+    }
+    Files.move(temp, this.dir.resolve(INDEX), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    this.indexed = this.records;
+  }
+
+  // adds the games still waiting, then saves the index and closes the log
+  void close() {
+    this.writer.shutdown();
+    try {
+      this.writer.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.closeLog();
+  }
+
+  // saves the index and closes the log
+  synchronized void closeLog() {
+    try {
+      if (this.log.isOpen()) {
+        this.saveIndex();
+        this.log.close();
+      }
+    }
+    catch (IOException e) {
+      System.err.println("Can't save statistics: " + e.getMessage());
+    }
+  }
+
+  // a record as bytes
+  static ByteBuffer encode(GameRecord record) {
+    ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+    buffer.put((byte) LaunchConfig.PRESETS.indexOf(record.preset))
+        .put((byte) record.result.ordinal())
+        .put((byte) (record.seeded ? 1 : 0))
+        .put((byte) 0)
+        .putInt(record.rows).putInt(record.columns).putInt(record.mineCap)
+        .putLong(record.seed).putLong(record.timeMillis)
+        .putInt(record.threeBV).putInt(record.clicks)
+        .putLong(record.finishedAt);
+    buffer.flip();
+    return buffer;
+  }
+
+  // the record at the buffer's position
+  static GameRecord decode(ByteBuffer buffer) {
+    String preset = LaunchConfig.PRESETS.get(buffer.get());
+    GameStatus result = GameStatus.values()[buffer.get()];
+    boolean seeded = buffer.get() == 1;
+    buffer.get();
+    return new GameRecord(preset, buffer.getInt(), buffer.getInt(), buffer.getInt(), seeded,
+        buffer.getLong(), buffer.getLong(), result, buffer.getInt(), buffer.getInt(),
+        buffer.getLong());
+  }
+}
+
+// to represent the index of one leaderboard: games played and won, and
+// the winning times, sorted only when asked for
+class BoardStats {
+  int games;
+  int wins;
+  long[] times;
+  boolean sorted;
+
+  BoardStats() {
+    this.times = new long[16];
+    this.sorted = true;
+  }
+
+  // adds a winning time
+  void addTime(long time) {
+    if (this.wins == this.times.length) {
+      this.times = Arrays.copyOf(this.times, this.wins * 2);
+    }
+    this.sorted = this.sorted && (this.wins == 0 || this.times[this.wins - 1] <= time);
+    this.times[this.wins] = time;
+    this.wins += 1;
+  }
+
+  // the winning times, fastest first
+  long[] sortedTimes() {
+    if (!this.sorted) {
+      Arrays.sort(this.times, 0, this.wins);
+      this.sorted = true;
+    }
+    return this.times;
+  }
+}
+
+// to record every game of a MineSweeper that finishes in a stats store,
+// timing it from the first move to the win or loss
+class StatsRecorder implements IBoardListener {
+  StatsStore store;
+  MineSweeper game;
+  String preset;
+  // only the first board of a launch comes from the seed
+  boolean seeded;
+  long seed;
+  long startNanos;
+  boolean started;
+  boolean recorded;
+
+  StatsRecorder(StatsStore store, MineSweeper game, String preset, boolean seeded, long seed) {
+    this.store = store;
+    this.game = game;
+    this.preset = preset;
+    this.seeded = seeded;
+    this.seed = seed;
+  }
+
+  // starts the timer on the first move, and records the first result
+  public void onEvents(long[] events, int count) {
+    for (int k = 0; k < count; k++) {
+      int kind = BoardEvents.kind(events[k]);
+      if (kind == BoardEvents.RESTARTED) {
+        this.started = false;
+        this.recorded = false;
+        this.seeded = false;
+      }
+      else if (kind == BoardEvents.WON || kind == BoardEvents.LOST) {
+        this.finish(kind == BoardEvents.WON ? GameStatus.WON : GameStatus.LOST);
+      }
+      else if (!this.started) {
+        this.started = true;
+        this.startNanos = System.nanoTime();
+      }
+    }
+  }
+
+  // records the game that just finished, unless it already was
+  // (an undone loss can't be won for a better time)
+  void finish(GameStatus result) {
+    if (this.recorded) {
+      return;
+    }
+    this.recorded = true;
+    long time = this.started ? (System.nanoTime() - this.startNanos) / 1000000 : 0;
+    // everything the record needs is copied here, on the game thread, and
+    // the 3BV, which looks at the whole board, is worked out by the writer
+    String preset = this.preset;
+    int rows = this.game.rows;
+    int columns = this.game.columns;
+    int mineCap = this.game.mineCap;
+    boolean seeded = this.seeded;
+    long seed = this.seed;
+    int[] mines = this.game.mines.toArray();
+    ITopology topology = this.game.topology;
+    NeighborTable table = this.game.neighborTable;
+    int clicks = this.game.clicks;
+    long when = System.currentTimeMillis();
+    this.store.submit(() -> new GameRecord(preset, rows, columns, mineCap, seeded, seed, time,
+        result, OpeningIndex.threeBV(mines, topology, table), clicks, when));
+  }
+}
+
+// to stream a game to many watchers: every batch of events is encoded
+// once into a small delta frame, and each watcher is handed the same
+// read-only bytes (a duplicate, so only the position is its own)
+// a watcher that falls too far behind is skipped until it next polls,
+// when it gets a snapshot of the whole board instead, so nobody slow
+// ever holds up the game
+// snapshots come from the hub's own copy of what's visible, kept from
+// the frames, so they never need the game itself
+class SpectatorHub implements IBoardListener {
+  static final byte DELTA = 1;
+  static final byte SNAPSHOT = 2;
+  // cell states in frames: 0 to 8 for numbers, then these
+  static final byte MINE = 9;
+  static final byte FLAGGED = 10;
+  static final byte HIDDEN = 11;
+  // how many frames a watcher may leave unread before it's behind
+  static final int DEFAULT_BACKLOG = 256;
+  MineSweeper game;
+  int rows;
+  int columns;
+  int mineCap;
+  // what watchers can see, as cell states, and how the game stands
+  byte[] cells;
+  int status;
+  long sequence;
+  ArrayList<Spectator> spectators;
+  // the snapshot of the current sequence, once someone's asked for it
+  ByteBuffer snapshot;
+
+  SpectatorHub(MineSweeper game) {
+    this.game = game;
+    this.rows = game.rows;
+    this.columns = game.columns;
+    this.mineCap = game.mineCap;
+    this.cells = new byte[game.rows * game.columns];
+    int[] visible = game.visibleState();
+    for (int i = 0; i < visible.length; i++) {
+      this.cells[i] = visible[i] == FrontierSolver.HIDDEN ? HIDDEN : (byte) visible[i];
+      if (visible[i] == FrontierSolver.HIDDEN && game.cellAt(i).hasFlag()) {
+        this.cells[i] = FLAGGED;
+      }
+    }
+    this.status = game.status();
+    this.spectators = new ArrayList<Spectator>();
+    game.addListener(this);
+  }
+
+  // a new watcher, which starts with a snapshot
+  synchronized Spectator subscribe(int backlog) {
+    Spectator spectator = new Spectator(this, backlog);
+    this.spectators.add(spectator);
+    return spectator;
+  }
+
+  // a new watcher with the default backlog
+  Spectator subscribe() {
+    return this.subscribe(DEFAULT_BACKLOG);
+  }
+
+  // stops sending to a watcher
+  synchronized void unsubscribe(Spectator spectator) {
+    this.spectators.remove(spectator);
+  }
+
+  // encodes the batch once, and hands it to every watcher keeping up
+  // runs on the game thread, and does no more for a watcher than queue
+  // a reference
+  public void onEvents(long[] events, int count) {
+    // frames carry the numbers of revealed cells, and whether a covered
+    // cell kept its flag, read while the board is as the events left it
+    ByteBuffer frame = ByteBuffer.allocate(13 + 6 * count);
+    frame.put(DELTA).putLong(0).putInt(count);
+    for (int k = 0; k < count; k++) {
+      int kind = BoardEvents.kind(events[k]);
+      int i = BoardEvents.index(events[k]);
+      byte state = 0;
+      if (kind == BoardEvents.REVEALED) {
+        Cell cell = this.game.cellAt(i);
+        state = cell.hasMine ? MINE : (byte) cell.countMines();
+      }
+      else if (kind == BoardEvents.COVERED) {
+        state = this.game.cellAt(i).hasFlag() ? FLAGGED : HIDDEN;
+      }
+      frame.put((byte) kind).putInt(i).put(state);
+    }
+    synchronized (this) {
+      this.sequence += 1;
+      frame.putLong(1, this.sequence);
+      frame.flip();
+      this.apply(frame);
+      frame.rewind();
+      ByteBuffer shared = frame.asReadOnlyBuffer();
+      this.snapshot = null;
+      for (Spectator spectator : this.spectators) {
+        spectator.offer(shared);
+      }
+    }
+  }
+
+  // plays a delta frame onto the hub's copy of the board
+  void apply(ByteBuffer frame) {
+    this.status = play(frame, this.cells, this.status);
+  }
+
+  // plays a delta frame onto the given cell states, returning the
+  // status the game has after it
+  static int play(ByteBuffer frame, byte[] cells, int status) {
+    frame.position(9);
+    int count = frame.getInt();
+    for (int k = 0; k < count; k++) {
+      int kind = frame.get();
+      int i = frame.getInt();
+      byte state = frame.get();
+      // a covered cell's state says whether it's still flagged
+      if (kind == BoardEvents.REVEALED || kind == BoardEvents.COVERED) {
+        cells[i] = state;
+      }
+      else if (kind == BoardEvents.UNFLAGGED) {
+        cells[i] = HIDDEN;
+      }
+      else if (kind == BoardEvents.FLAGGED) {
+        cells[i] = FLAGGED;
+      }
+      else if (kind == BoardEvents.RESTARTED) {
+        Arrays.fill(cells, HIDDEN);
+        status = MoveHistory.PLAYING;
+      }
+      else if (kind == BoardEvents.WON) {
+        status = MoveHistory.WON;
+      }
+      else if (kind == BoardEvents.LOST) {
+        status = MoveHistory.LOST;
+      }
+      else if (kind == BoardEvents.RESUMED) {
+        status = MoveHistory.PLAYING;
+      }
+    }
+    return status;
+  }
+
+  // the whole board as of the latest frame, encoded once for however
+  // many watchers need it: type, sequence, size, mines, status, and a
+  // state for every cell
+  synchronized ByteBuffer snapshot() {
+    if (this.snapshot == null) {
+      ByteBuffer frame = ByteBuffer.allocate(22 + this.cells.length);
+      frame.put(SNAPSHOT).putLong(this.sequence).putInt(this.rows).putInt(this.columns)
+          .putInt(this.mineCap).put((byte) this.status).put(this.cells);
+      frame.flip();
+      this.snapshot = frame.asReadOnlyBuffer();
+    }
+    return this.snapshot.duplicate();
+  }
+}
+
+// to represent one watcher of a SpectatorHub: the frames it hasn't read
+// yet, shared with every other watcher, or a note that it fell behind
+class Spectator {
+  SpectatorHub hub;
+  ByteBuffer[] frames;
+  int head;
+  int size;
+  // true when the next poll has to be a snapshot
+  boolean behind;
+  // how many times this watcher fell behind
+  int resyncs;
+
+  Spectator(SpectatorHub hub, int backlog) {
+    this.hub = hub;
+    this.frames = new ByteBuffer[backlog];
+    this.behind = true;
+  }
+
+  // queues a frame, or drops everything queued if there's no room
+  // (called by the hub, holding its lock)
+  void offer(ByteBuffer frame) {
+    if (this.behind) {
+      return;
+    }
+    if (this.size == this.frames.length) {
+      Arrays.fill(this.frames, null);
+      this.head = 0;
+      this.size = 0;
+      this.behind = true;
+      this.resyncs += 1;
+      return;
+    }
+    this.frames[(this.head + this.size) % this.frames.length] = frame;
+    this.size += 1;
+  }
+
+  // the next frame to read, or null if there isn't one yet
+  ByteBuffer poll() {
+    synchronized (this.hub) {
+      if (this.behind) {
+        this.behind = false;
+        return this.hub.snapshot();
+      }
+      if (this.size == 0) {
+        return null;
+      }
+      ByteBuffer frame = this.frames[this.head];
+      this.frames[this.head] = null;
+      this.head = (this.head + 1) % this.frames.length;
+      this.size -= 1;
+      return frame.duplicate();
+    }
+  }
+}
+
+// to represent a watcher's copy of a game, built from the frames of a
+// SpectatorHub alone
+class SpectatorView {
+  int rows;
+  int columns;
+  int mineCap;
+  int status;
+  long sequence;
+  byte[] cells;
+
+  // brings this copy up to date with a frame
+  void apply(ByteBuffer frame) {
+    byte type = frame.get(0);
+    long sequence = frame.getLong(1);
+    if (type == SpectatorHub.SNAPSHOT) {
+      frame.position(9);
+      this.rows = frame.getInt();
+      this.columns = frame.getInt();
+      this.mineCap = frame.getInt();
+      this.status = frame.get();
+      this.cells = new byte[this.rows * this.columns];
+      frame.get(this.cells);
+      this.sequence = sequence;
+    }
+    // a delta the last snapshot already covers is skipped
+    else if (sequence > this.sequence) {
+      this.status = SpectatorHub.play(frame, this.cells, this.status);
+      this.sequence = sequence;
+    }
+  }
+}
+
+// to represent where the mines of a board are: their indices
+// (row * columns + column), kept sorted
+class MineIndex {
+  int[] positions;
+  int size;
+
+  MineIndex(IntList positions) {
+    this.positions = positions.toArray();
+    this.size = positions.size;
+    Arrays.sort(this.positions);
+  }
+
+  // the k-th mine, in board order
+  int get(int k) {
+    return this.positions[k];
+  }
+
+  // is there a mine at index i?
+  boolean contains(int i) {
+    return Arrays.binarySearch(this.positions, 0, this.size, i) >= 0;
+  }
+
+  // moves the mine at index from to index to, keeping the order
+  void move(int from, int to) {
+    int k = Arrays.binarySearch(this.positions, 0, this.size, from);
+    // closes the gap left by from, then opens one where to belongs
+    System.arraycopy(this.positions, k + 1, this.positions, k, this.size - k - 1);
+    int at = -(Arrays.binarySearch(this.positions, 0, this.size - 1, to) + 1);
+    System.arraycopy(this.positions, at, this.positions, at + 1, this.size - 1 - at);
+    this.positions[at] = to;
+  }
+
+  // a copy of the positions, for exporting or debugging
+  int[] toArray() {
+    return Arrays.copyOf(this.positions, this.size);
+  }
+}
+
+// to represent the openings of a board: the connected regions of cells
+// with no neighboring mines, found once with union-find, each with the
+// list of every cell a click inside it reveals (its numbered border too)
+// the cells of region g are regionCells[regionStart[g]] up to
+// regionCells[regionStart[g + 1]]
+// on the classic board the zeros come from a Bitboard's zero plane,
+// 64 cells at a time; other topologies check each cell's neighbors
+class OpeningIndex {
+  // the region of every cell, or -1 for cells in no region
+  int[] regionOf;
+  int[] regionStart;
+  int[] regionCells;
+  // the number of numbered cells that don't border any opening
+  int isolatedNumbers;
+
+  OpeningIndex(MineSweeper game) {
+    this(OpeningIndex.minesOf(game), game.topology, game.neighborTable);
+  }
+
+  // the openings of any board, given which cells have mines
+  OpeningIndex(boolean[] mine, ITopology topology, NeighborTable table) {
+    this(mine, topology.isSquare()
+        ? new Bitboard(mine, table.rows, table.columns).countNeighbors().zeroArray()
+        : OpeningIndex.zerosOf(mine, table), table);
+  }
+
+  // the openings of a board whose zeros are already known
+  OpeningIndex(boolean[] mine, boolean[] zero, NeighborTable table) {
+    int size = mine.length;
+
+    // joins every pair of touching zeros
+    DisjointSets sets = new DisjointSets(size);
+    for (int i = 0; i < size; i++) {
+      if (zero[i]) {
+        for (int k = table.offsets[i]; k < table.offsets[i + 1]; k++) {
+          int j = table.indices[k];
+          if (zero[j]) {
+            sets.union(i, j);
+          }
+        }
+      }
+    }
+
+    // numbers the regions and groups their zeros together
+    this.regionOf = new int[size];
+    int regions = 0;
+    for (int i = 0; i < size; i++) {
+      this.regionOf[i] = -1;
+      if (zero[i] && sets.find(i) == i) {
+        // roots get their region numbers first, the rest copy their root's
+        this.regionOf[i] = regions;
+        regions += 1;
+      }
+    }
+    int[] zerosIn = new int[regions + 1];
+    for (int i = 0; i < size; i++) {
+      if (zero[i]) {
+        this.regionOf[i] = this.regionOf[sets.find(i)];
+        zerosIn[this.regionOf[i] + 1] += 1;
+      }
+    }
+    for (int g = 0; g < regions; g++) {
+      zerosIn[g + 1] += zerosIn[g];
+    }
+    int[] zeros = new int[zerosIn[regions]];
+    int[] next = Arrays.copyOf(zerosIn, regions);
+    for (int i = 0; i < size; i++) {
+      if (zero[i]) {
+        zeros[next[this.regionOf[i]]] = i;
+        next[this.regionOf[i]] += 1;
+      }
+    }
+
+    // lists each region's zeros followed by its numbered border,
+    // stamping border cells so each is listed once per region
+    int[] stamp = new int[size];
+    Arrays.fill(stamp, -1);
+    boolean[] bordered = new boolean[size];
+    IntList cells = new IntList(zeros.length);
+    this.regionStart = new int[regions + 1];
+    for (int g = 0; g < regions; g++) {
+      this.regionStart[g] = cells.size;
+      for (int z = zerosIn[g]; z < zerosIn[g + 1]; z++) {
+        cells.add(zeros[z]);
+      }
+      for (int z = zerosIn[g]; z < zerosIn[g + 1]; z++) {
+        int i = zeros[z];
+        for (int k = table.offsets[i]; k < table.offsets[i + 1]; k++) {
+          int j = table.indices[k];
+          if (!zero[j] && stamp[j] != g) {
+            stamp[j] = g;
+            bordered[j] = true;
+            cells.add(j);
+          }
+        }
+      }
+    }
+    this.regionStart[regions] = cells.size;
+    this.regionCells = cells.toArray();
+
+    for (int i = 0; i < size; i++) {
+      if (!mine[i] && !zero[i] && !bordered[i]) {
+        this.isolatedNumbers += 1;
+      }
+    }
   }
 
-  // handler for mouse clicks clicks
-  public void onMouseClicked(Posn pos, String buttonName) {
-    int cellWidth = 30;
-    int cellHeight = 30;
-    int r = Math.floorDiv(pos.x, cellWidth);
-    int c = Math.floorDiv(pos.y, cellHeight);
-    Posn cellCoor = new Posn(r * cellWidth, c * cellHeight);
-    int cellRight = cellCoor.x + cellWidth;
-    int cellBottom = cellCoor.y + cellHeight;
-    
-    // conditions where mouse clicks shouldn't be registered
-    // gameOver, win, or out of bounds
-    if (this.gameOver || this.win || r > this.rows - 1 || c > this.columns - 1) {
-      return;
-    }
-   
-    // cell that is clicked
-    Cell cellClicked = board.get(r).get(c);
-    
-    // placing a flag
-    if (pos.x >= cellCoor.x && pos.x < cellRight 
-        && pos.y >= cellCoor.y && pos.y < cellBottom
-        && buttonName.equals("RightButton") 
-        && !cellClicked.hasFlag() && !cellClicked.isRevealed()) {
-      board.get(r).get(c).placeFlag();
-      this.flagCount -= 1;
-    }
-    
-    // removing a flag
-    else if (pos.x >= cellCoor.x && pos.x < cellRight 
-        && pos.y >= cellCoor.y && pos.y < cellBottom
-        && buttonName.equals("RightButton") && cellClicked.hasFlag()) {
-      board.get(r).get(c).removeFlag();
-      this.flagCount += 1;
-    }
-    
-    // when a cell is pressed
-    else if (pos.x >= cellCoor.x && pos.x < cellRight 
-        && pos.y >= cellCoor.y && pos.y < cellBottom
-        && buttonName.equals("LeftButton") && !cellClicked.hasFlag()) {
-      board.get(r).get(c).floodFill();
-      this.gameWin();
+  // which cells are zeros (empty, with none of their neighbors mined),
+  // checked one cell at a time
+  static boolean[] zerosOf(boolean[] mine, NeighborTable table) {
+    boolean[] zero = new boolean[mine.length];
+    for (int i = 0; i < mine.length; i++) {
+      zero[i] = !mine[i];
+      for (int k = table.offsets[i]; k < table.offsets[i + 1] && zero[i]; k++) {
+        zero[i] = !mine[table.indices[k]];
+      }
     }
+    return zero;
+  }
 
-    // when a mine is pressed
-    if (pos.x >= cellCoor.x && pos.x < cellRight 
-        && pos.y >= cellCoor.y && pos.y < cellBottom
-        && buttonName.equals("LeftButton") && cellClicked.hasMine
-        && cellClicked.isRevealed() && !cellClicked.hasFlag()) {
-      this.gameOver = true;
-      this.gameOver();
+  // the 3BV of a board given just where its mines are
+  static int threeBV(int[] mines, ITopology topology, NeighborTable table) {
+    boolean[] mine = new boolean[table.rows * table.columns];
+    for (int i : mines) {
+      mine[i] = true;
     }
+    return new OpeningIndex(mine, topology, table).threeBV();
   }
-  
-  // for restarting the game
-  public void onKeyEvent(String key) {
-    if (key.equals("r")) {
-      this.restartGame();
+
+  // which cells of a game have mines
+  static boolean[] minesOf(MineSweeper game) {
+    boolean[] mine = new boolean[game.rows * game.columns];
+    for (int i = 0; i < mine.length; i++) {
+      mine[i] = game.cellAt(i).hasMine;
     }
+    return mine;
+  }
+
+  // how many openings the board has
+  int openings() {
+    return this.regionStart.length - 1;
+  }
+
+  // how many cells clicking inside region g reveals
+  int regionSize(int g) {
+    return this.regionStart[g + 1] - this.regionStart[g];
+  }
+
+  // the fewest clicks that clear the board (3BV): one per opening
+  // and one per numbered cell no opening reveals
+  int threeBV() {
+    return this.openings() + this.isolatedNumbers;
   }
 }
 
@@ -468,49 +5949,9 @@ class ExamplesMinesweeper {
 
   // to run the game
   void testBigBang(Tester t) {
-
-    // to choose game difficulty when run
-    // type in console
-    System.out.println("Minesweeper:");
-    System.out.println("Type Beginner, Expert, Intermediate, or Custom for different game modes!");
-    Scanner difficulty = new Scanner(System.in);
-    String input = difficulty.next();
-    int rows = 0;
-    int columns = 0;
-    int mines = 0;
-
-    if (input.equals("Beginner")) {
-      rows = 9;
-      columns = 9;
-      mines = 10;
-    }
-
-    if (input.equals("Expert")) {
-      rows = 16;
-      columns = 16;
-      mines = 40;
-    }
-
-    if (input.equals("Intermediate")) {
-      rows = 30;
-      columns = 16;
-      mines = 99;
-    }
-
-    if (input.equals("Custom")) {
-      System.out.println("How many columns would you like? ");
-      rows = difficulty.nextInt();
-      System.out.println("How many rows would you like? ");
-      columns = difficulty.nextInt();
-      System.out.println("How many mines would you like? ");
-      mines = difficulty.nextInt();
-    }
-
-    MineSweeper world = new MineSweeper(rows, columns, new Random(), mines);
-    int worldWidth = world.rows * 30;
-    int worldHeight = world.columns * 30 + 50;
-    double tickRate = 1;
-    world.bigBang(worldWidth, worldHeight, tickRate);
+    // a beginner game in a window; the Launcher takes the same
+    // settings from the command line or a config file
+    Launcher.launch(LaunchConfig.parse(new String[] {"--preset", "beginner"}));
   }
   
   // regular game board
@@ -1168,4 +6609,1193 @@ class ExamplesMinesweeper {
     t.checkExpect(c7.revealed, true);
     t.checkExpect(m1.gameOver, true);
   }
-}
\ No newline at end of file
+  
+  // tests for the topologies and the neighbor table they build
+  void testTopologies(Tester t) {
+    int[] out = new int[8];
+    // square: corners have 3 neighbors, the middle has 8
+    t.checkExpect(new SquareTopology().neighbors(0, 0, 3, 3, out), 3);
+    t.checkExpect(new SquareTopology().neighbors(1, 1, 3, 3, out), 8);
+    // torus: even corners have 8
+    t.checkExpect(new TorusTopology().neighbors(0, 0, 3, 3, out), 8);
+    // torus: a 2 x 2 board wraps onto the same 3 cells
+    t.checkExpect(new TorusTopology().neighbors(0, 0, 2, 2, out), 3);
+    // orthogonal: only edges count
+    t.checkExpect(new OrthogonalTopology().neighbors(1, 1, 3, 3, out), 4);
+    t.checkExpect(new OrthogonalTopology().neighbors(0, 0, 3, 3, out), 2);
+    // knight: corner of a 5 x 5 board has 2 jumps, the middle has 8
+    t.checkExpect(new KnightTopology().neighbors(0, 0, 5, 5, out), 2);
+    t.checkExpect(new KnightTopology().neighbors(2, 2, 5, 5, out), 8);
+    // hex: interior cells touch 6
+    t.checkExpect(new HexTopology().neighbors(2, 2, 5, 5, out), 6);
+    t.checkExpect(new HexTopology().neighbors(1, 2, 5, 5, out), 6);
+    
+    // neighbor table matches what linkNeighbors built
+    init();
+    t.checkExpect(m1.neighborTable.degree(0), 3);
+    t.checkExpect(m1.neighborTable.degree(4), 8);
+    t.checkExpect(m1.cellAt(m1.neighborTable.neighbor(0, 0)), c3);
+    
+    // a torus board links every cell to 8 others
+    MineSweeper torus = new MineSweeper(4, 4, new Random(3), 2, new TorusTopology());
+    t.checkExpect(torus.board.get(0).get(0).neighbors.size(), 8);
+    t.checkExpect(torus.board.get(0).get(0).neighbors
+        .contains(torus.board.get(3).get(3)), true);
+  }
+  
+  // tests for the parallel board generator
+  void testBoardGenerator(Tester t) {
+    // same seed, same board, no matter how many threads
+    ForkJoinPool single = new ForkJoinPool(1);
+    ForkJoinPool quad = new ForkJoinPool(4);
+    PackedBoard one;
+    PackedBoard four;
+    try {
+      one = new BoardGenerator(new SquareTopology(), single).generate(700, 300, 40000, 99);
+      four = new BoardGenerator(new SquareTopology(), quad).generate(700, 300, 40000, 99);
+    }
+    finally {
+      single.shutdown();
+      quad.shutdown();
+    }
+    t.checkExpect(Arrays.equals(one.mines, four.mines), true);
+    t.checkExpect(Arrays.equals(one.counts, four.counts), true);
+    // exactly the number of mines asked for
+    t.checkExpect(one.mineCount(), 40000);
+    // a different seed gives a different board
+    PackedBoard other = new BoardGenerator(new SquareTopology()).generate(700, 300, 40000, 100);
+    t.checkExpect(Arrays.equals(one.mines, other.mines), false);
+    // a board with more mines than empty cells
+    t.checkExpect(new BoardGenerator(new SquareTopology())
+        .generate(10, 10, 95, 1).mineCount(), 95);
+    // a tiny torus counts each neighbor once
+    PackedBoard tiny = new BoardGenerator(new TorusTopology()).generate(2, 2, 4, 1);
+    t.checkExpect(tiny.countMines(0, 0), 3);
+    
+    // counts match the counts of a board built from Cells
+    MineSweeper m5 = new MineSweeper(20, 30, 7, 120, new SquareTopology());
+    PackedBoard p5 = new BoardGenerator(new SquareTopology()).generate(20, 30, 120, 7);
+    t.checkExpect(m5.board.get(4).get(9).hasMine, p5.hasMine(4, 9));
+    t.checkExpect(m5.board.get(4).get(9).countMines(), p5.countMines(4, 9));
+    t.checkExpect(m5.board.get(19).get(0).countMines(), p5.countMines(19, 0));
+    t.checkExpect(m5.flagCount, 120);
+  }
+  
+  // tests for counting neighbors with a Bitboard
+  void testBitboard(Tester t) {
+    init();
+    BitboardCounts counts = new Bitboard(m1).countNeighbors();
+    t.checkExpect(counts.count(0, 1), c1.countMines());
+    t.checkExpect(counts.count(2, 2), c8.countMines());
+    t.checkExpect(counts.count(0, 0), c0.countMines());
+    // m1 has 2 mines, c2 is its only zero
+    t.checkExpect(counts.population(counts.mines), 2);
+    t.checkExpect(counts.population(counts.zero), 1);
+    t.checkExpect(counts.population(counts.numbered), 6);
+    
+    // a board wider than one word, with every count from 0 to 8
+    PackedBoard packed = new BoardGenerator(new SquareTopology())
+        .generate(50, 130, 3000, 11);
+    BitboardCounts wide = new Bitboard(packed).countNeighbors();
+    t.checkExpect(wide.matches(packed), true);
+    t.checkExpect(wide.population(wide.mines), 3000);
+    t.checkExpect(wide.population(wide.zero) + wide.population(wide.numbered), 50 * 130 - 3000);
+    
+    // the zero plane finds the same zeros as checking every cell's
+    // neighbors, which the other topologies still do
+    boolean[] mine = packed.mineArray();
+    NeighborTable table = new NeighborTable(new SquareTopology(), 50, 130);
+    boolean[] zero = wide.zeroArray();
+    t.checkExpect(zero, OpeningIndex.zerosOf(mine, table));
+    t.checkExpect(new OpeningIndex(mine, zero, table).regionCells,
+        new OpeningIndex(mine, new SquareTopology(), table).regionCells);
+  }
+  
+  // tests for the opening index
+  void testOpeningIndex(Tester t) {
+    init();
+    OpeningIndex index = m1.openingIndex();
+    // c2 is m1's only zero, so m1 has one opening of c2 and its border
+    t.checkExpect(index.openings(), 1);
+    t.checkExpect(index.regionOf[2], 0);
+    t.checkExpect(index.regionOf[1], -1);
+    t.checkExpect(index.regionSize(0), 4);
+    // c3 and c6 don't border c2, so they each need a click
+    t.checkExpect(index.isolatedNumbers, 3);
+    t.checkExpect(index.threeBV(), 4);
+    
+    // m2 has no zeros, every empty cell needs a click
+    t.checkExpect(m2.openingIndex().openings(), 0);
+    t.checkExpect(m2.openingIndex().threeBV(), 3);
+    
+    // clicking a zero reveals exactly its opening and counts it, from
+    // the index the first opening found
+    m1.openings = null;
+    m1.revealCell(0, 2);
+    t.checkExpect(m1.openings == null, false);
+    t.checkExpect(m1.reveals.pending(), false);
+    t.checkExpect(m1.revealedSafe, 4);
+    t.checkExpect(c1.revealed && c2.revealed && c4.revealed && c5.revealed, true);
+    t.checkExpect(c3.revealed, false);
+    
+    // a new layout drops the old index
+    m1.onKeyEvent("r");
+    t.checkExpect(m1.openings, null);
+    t.checkExpect(m1.revealedSafe, 0);
+  }
+  
+  // tests for the union-find shared by the opening index and the solver
+  void testDisjointSets(Tester t) {
+    DisjointSets sets = new DisjointSets(6);
+    sets.union(4, 2);
+    sets.union(5, 4);
+    sets.union(1, 3);
+    // the smallest member is the root
+    t.checkExpect(sets.find(5), 2);
+    t.checkExpect(sets.find(3), 1);
+    t.checkExpect(sets.find(0), 0);
+    sets.union(3, 5);
+    t.checkExpect(sets.find(4), 1);
+    // joining a set with itself changes nothing
+    sets.union(2, 5);
+    t.checkExpect(sets.find(2), 1);
+  }
+  
+  // tests for the mine index
+  void testMineIndex(Tester t) {
+    init();
+    // c0 and c7 are m1's mines
+    t.checkExpect(m1.mines.size, 2);
+    t.checkExpect(m1.mines.toArray(), new int[] {0, 7});
+    t.checkExpect(m1.mines.contains(7), true);
+    t.checkExpect(m1.mines.contains(4), false);
+    
+    // moving a mine keeps the cells and the index in step
+    m1.moveMine(0, 8);
+    t.checkExpect(c0.hasMine, false);
+    t.checkExpect(c8.hasMine, true);
+    t.checkExpect(m1.mines.toArray(), new int[] {7, 8});
+    m1.moveMine(8, 3);
+    t.checkExpect(m1.mines.toArray(), new int[] {3, 7});
+    t.checkException(new IllegalArgumentException("Can only move a mine onto an empty cell"),
+        m1, "moveMine", 3, 7);
+    
+    // losing reveals just the mines
+    m1.gameOver();
+    t.checkExpect(c3.revealed, true);
+    t.checkExpect(c7.revealed, true);
+    t.checkExpect(c0.revealed, false);
+    
+    // generated boards are indexed too
+    MineSweeper m5 = new MineSweeper(20, 30, 7, 120, new SquareTopology());
+    t.checkExpect(m5.mines.size, 120);
+  }
+  
+  // tests for applying a batch of moves
+  void testApplyMoves(Tester t) {
+    init();
+    // flag c0, open c2's opening, then press c1 again (already revealed)
+    MoveResult result = m1.applyMoves(new ArrayList<Move>(Arrays.asList(
+        new Move(MoveKind.FLAG, 0, 0),
+        new Move(MoveKind.REVEAL, 0, 2),
+        new Move(MoveKind.REVEAL, 0, 1))));
+    t.checkExpect(result.status, GameStatus.PLAYING);
+    t.checkExpect(result.applied, 3);
+    // c0 (flagged), then c1, c2, c4, c5 (revealed)
+    t.checkExpect(result.changed.size(), 5);
+    t.checkExpect(result.changed.get(0).flagged, true);
+    t.checkExpect(result.changed.get(0).revealed, false);
+    t.checkExpect(result.changed.get(1).row, 0);
+    t.checkExpect(result.changed.get(1).column, 1);
+    t.checkExpect(result.changed.get(1).count, 1);
+    t.checkExpect(m1.flagCount, 1);
+    
+    // chording c4 with only one of its two mines flagged does nothing
+    t.checkExpect(m1.applyMoves(new ArrayList<Move>(Arrays.asList(
+        new Move(MoveKind.CHORD, 1, 1)))).changed.size(), 0);
+    // once c7 is flagged too, chording c4 clears its last neighbors and wins
+    MoveResult win = m1.applyMoves(new ArrayList<Move>(Arrays.asList(
+        new Move(MoveKind.FLAG, 2, 1),
+        new Move(MoveKind.CHORD, 1, 1))));
+    t.checkExpect(win.status, GameStatus.WON);
+    t.checkExpect(win.changed.size(), 4);
+    
+    // the batch stops at the first loss
+    MoveResult loss = m2.applyMoves(new ArrayList<Move>(Arrays.asList(
+        new Move(MoveKind.REVEAL, 1, 1),
+        new Move(MoveKind.REVEAL, 0, 0))));
+    t.checkExpect(loss.status, GameStatus.LOST);
+    t.checkExpect(loss.applied, 1);
+    t.checkExpect(loss.changed.size(), 1);
+    t.checkExpect(loss.changed.get(0).hasMine, true);
+    t.checkExpect(c9.revealed, false);
+  }
+  
+  // tests for reading launch settings
+  void testLaunchConfig(Tester t) {
+    LaunchConfig beginner = LaunchConfig.parse(new String[0]);
+    t.checkExpect(beginner.rows, 9);
+    t.checkExpect(beginner.mines, 10);
+    t.checkExpect(beginner.renderer, "window");
+    t.checkExpect(beginner.seeded, false);
+    // presets match in any case, and options can use = or a space
+    LaunchConfig expert = LaunchConfig.parse(new String[] {"--preset=EXPERT", "--mines", "99",
+        "--seed=7", "--renderer", "headless", "--tick", "0.5"});
+    t.checkExpect(expert.rows, 30);
+    t.checkExpect(expert.columns, 16);
+    t.checkExpect(expert.mines, 99);
+    t.checkExpect(expert.seed, 7L);
+    t.checkExpect(expert.tickRate, 0.5);
+    // a preset's board can't be changed, since its name has to describe it
+    t.checkException(new IllegalArgumentException("The expert preset is 30 x 16 with 99 mines;"
+        + " use --preset custom for other sizes"), expert, "parse",
+        (Object) new String[] {"--preset", "expert", "--mines", "45"});
+    // seeded launches give the same board every time, and a headless one
+    // plays the commands it's given until they run out
+    ByteArrayOutputStream answers = new ByteArrayOutputStream();
+    MineSweeper game = Launcher.launch(expert, new ByteArrayInputStream(
+        "flag 0 0\n\nundo\n".getBytes(StandardCharsets.UTF_8)), new PrintStream(answers));
+    t.checkExpect(game.mines.toArray(), expert.makeGame().mines.toArray());
+    t.checkExpect(game.mineCap, 99);
+    t.checkExpect(answers.toString().split("\\R"), new String[] {
+      "Started a 30x16 board with 99 mines", "playing flags 98 time 00:00",
+      "playing flags 99 time 00:00"});
+    
+    // a config file, with the command line winning
+    try {
+      Path file = Files.createTempFile("minesweeper", ".properties");
+      Files.write(file, Arrays.asList("preset = Custom", "rows = 20", "columns = 10",
+          "mines = 30", "renderer = headless"));
+      LaunchConfig custom = LaunchConfig.parse(new String[] {"--config", file.toString(),
+          "--mines", "25"});
+      t.checkExpect(custom.rows, 20);
+      t.checkExpect(custom.columns, 10);
+      t.checkExpect(custom.mines, 25);
+      Files.delete(file);
+    }
+    catch (IOException e) {
+      t.checkExpect(e, null);
+    }
+    
+    Properties settings = new Properties();
+    settings.setProperty("preset", "custom");
+    settings.setProperty("rows", "4");
+    t.checkException(new IllegalArgumentException("A custom game needs rows, columns and mines"),
+        beginner, "fromProperties", settings);
+    settings.setProperty("columns", "4");
+    settings.setProperty("mines", "16");
+    t.checkException(new IllegalArgumentException("A board needs between 0 and 15 mines"),
+        beginner, "fromProperties", settings);
+    settings.setProperty("mines", "lots");
+    t.checkException(new IllegalArgumentException("mines has to be a whole number, not lots"),
+        beginner, "fromProperties", settings);
+    settings.setProperty("mines", "3");
+    settings.setProperty("colour", "red");
+    t.checkException(new IllegalArgumentException("Unknown setting colour"),
+        beginner, "fromProperties", settings);
+    t.checkConstructorException(new IllegalArgumentException("Unknown renderer opengl"),
+        "LaunchConfig", "custom", 4, 4, 3, false, 0L, "opengl", 1.0);
+    t.checkConstructorException(new IllegalArgumentException("The tick rate has to be positive"),
+        "LaunchConfig", "custom", 4, 4, 3, false, 0L, "window", 0.0);
+  }
+  
+  // tests for playing without a display
+  void testHeadlessRunner(Tester t) {
+    init();
+    ByteArrayOutputStream answers = new ByteArrayOutputStream();
+    HeadlessRunner runner = new HeadlessRunner(m1, new PrintStream(answers));
+    t.checkExpect(runner.command("reveal 0 2"), "playing flags 2 time 00:00");
+    t.checkExpect(runner.command("  FLAG 0 0 "), "playing flags 1 time 00:00");
+    t.checkExpect(runner.command("board"), "F10\n.21\n...\nplaying flags 1 time 00:00");
+    t.checkExpect(runner.command(""), null);
+    t.checkExpect(runner.command("reveal 0"), "error: reveal needs a row and a column");
+    t.checkExpect(runner.command("chord a b"), "error: chord needs a row and a column, not a b");
+    t.checkExpect(runner.command("jump"), "error: unknown command jump");
+    t.checkExpect(runner.command("undo"), "playing flags 2 time 00:00");
+    t.checkExpect(runner.command("redo"), "playing flags 1 time 00:00");
+    t.checkExpect(runner.command("reveal 2 1"), "lost flags 1 time 00:00");
+    t.checkExpect(runner.command("restart"), "playing flags 2 time 00:00");
+    t.checkExpect(runner.running, true);
+    runner.command("quit");
+    t.checkExpect(runner.running, false);
+    
+    // the game keeps ticking while it waits for commands
+    init();
+    HeadlessRunner slow = new HeadlessRunner(m1, new PrintStream(answers));
+    slow.run(new InputStream() {
+      int calls = 0;
+
+      public int read() {
+        try {
+          Thread.sleep(50);
+        }
+        catch (InterruptedException e) {
+          return -1;
+        }
+        this.calls += 1;
+        return this.calls == 1 ? '\n' : -1;
+      }
+    }, 1000000);
+    t.checkExpect(m1.elapsed + m1.seconds > 0, true);
+  }
+  
+  // tests for saving a game in the background and resuming it
+  void testAutosave(Tester t) {
+    init();
+    try {
+      Path dir = Files.createTempDirectory("minesweeper");
+      t.checkExpect(Autosave.resume(dir, new SquareTopology()), null);
+      Autosave save = new Autosave(m1, dir);
+      m1.onMouseClicked(new Posn(0, 0), "RightButton");
+      m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+      m1.seconds = 12;
+      m1.onMouseClicked(new Posn(60, 0), "LeftButton");
+      save.flush();
+      
+      // before any compaction: the first snapshot plus the journal
+      t.checkExpect(Files.size(dir.resolve(Autosave.JOURNAL)) > 0, true);
+      MineSweeper resumed = Autosave.resume(dir, new SquareTopology());
+      t.checkExpect(resumed.visibleState(), m1.visibleState());
+      t.checkExpect(resumed.mines.toArray(), m1.mines.toArray());
+      t.checkExpect(resumed.flagCount, 1);
+      t.checkExpect(resumed.revealedSafe, 5);
+      t.checkExpect(resumed.hash, m1.hash);
+      t.checkExpect(resumed.seconds, 12);
+      
+      // losing and restarting are saved too, and closing folds it all
+      // into the snapshot
+      m1.onMouseClicked(new Posn(60, 30), "LeftButton");
+      save.flush();
+      resumed = Autosave.resume(dir, new SquareTopology());
+      t.checkExpect(resumed.gameOver, true);
+      // the flagged mine the loss revealed keeps its flag
+      t.checkExpect(resumed.cellAt(0).revealed, true);
+      t.checkExpect(resumed.cellAt(0).flag, true);
+      t.checkExpect(resumed.flagCount, 1);
+      t.checkExpect(resumed.hash, m1.hash);
+      m1.onKeyEvent("r");
+      save.close();
+      t.checkExpect(save.failure, null);
+      t.checkExpect(Files.size(dir.resolve(Autosave.JOURNAL)), 0L);
+      resumed = Autosave.resume(dir, new SquareTopology());
+      t.checkExpect(resumed.gameOver, false);
+      t.checkExpect(resumed.mines.toArray(), m1.mines.toArray());
+      t.checkExpect(resumed.revealedSafe, 0);
+      
+      // a torn write at the end of the journal, as a crash might leave,
+      // is left out
+      Files.write(dir.resolve(Autosave.JOURNAL), new byte[] {0, 0, 1, 0, 7},
+          StandardOpenOption.APPEND);
+      t.checkExpect(Autosave.resume(dir, new SquareTopology()).visibleState(),
+          m1.visibleState());
+      
+      Files.delete(dir.resolve(Autosave.SNAPSHOT));
+      Files.delete(dir.resolve(Autosave.JOURNAL));
+      Files.delete(dir);
+    }
+    catch (IOException e) {
+      t.checkExpect(e, null);
+    }
+  }
+  
+  // tests for the minimap's pyramid
+  void testMinimap(Tester t) {
+    init();
+    Minimap map = new Minimap(m1);
+    // 3x3 cells, then 2x2 blocks of 2x2, then one block
+    t.checkExpect(map.base, 0);
+    t.checkExpect(map.levelRows, new int[] {3, 2, 1});
+    t.checkExpect(map.cellsIn(1, 1, 0), 2);
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    // c1, c2, c4, c5 revealed and c0 flagged
+    t.checkExpect(map.revealed[1], new int[] {2, 2, 0, 0});
+    t.checkExpect(map.flagged[1], new int[] {1, 0, 0, 0});
+    t.checkExpect(map.revealed[2], new int[] {4});
+    t.checkExpect(map.tileColor(0, 0, 0), Color.RED);
+    t.checkExpect(map.tileColor(0, 0, 2), Color.WHITE);
+    t.checkExpect(map.tileColor(1, 1, 1), new Color(128, 128, 128));
+    t.checkExpect(map.tileColor(1, 0, 1), new Color(255, 255, 255));
+    // undoing and restarting keep it in step
+    m1.undo();
+    t.checkExpect(map.revealed[2], new int[] {0});
+    m1.onKeyEvent("r");
+    t.checkExpect(map.flagged[2], new int[] {0});
+    
+    // the drawn level has at most MAX_SIDE blocks a side
+    MineSweeper big = new MineSweeper(300, 200, 3L, 0, new SquareTopology());
+    Minimap bigMap = new Minimap(big);
+    t.checkExpect(bigMap.base, 2);
+    t.checkExpect(bigMap.levelRows[0], 75);
+    t.checkExpect(bigMap.levelColumns[0], 50);
+    t.checkExpect(bigMap.revealed.length, 8);
+    t.checkExpect(bigMap.draw().getWidth(), 256.0);
+    // clicking a block jumps to the cell in its middle
+    t.checkExpect(bigMap.jumpTarget(0, 0, 0), 2 * 200 + 2);
+    t.checkExpect(bigMap.jumpTarget(0, 255, 170), 298 * 200 + 198);
+    t.checkExpect(bigMap.jumpTarget(0, 100, 200), -1);
+    big.applyMoves(new ArrayList<Move>(Arrays.asList(new Move(MoveKind.REVEAL, 0, 0))));
+    t.checkExpect(bigMap.revealed[7], new int[] {300 * 200});
+    t.checkExpect(bigMap.tileColor(0, 74, 49), Color.WHITE);
+    
+    // a lost game reveals its flagged mines, which then count as revealed
+    init();
+    Minimap lost = new Minimap(m1);
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    m1.onMouseClicked(new Posn(60, 30), "LeftButton");
+    t.checkExpect(m1.gameOver, true);
+    t.checkExpect(lost.revealed[2], new int[] {2});
+    t.checkExpect(lost.flagged[2], new int[] {0});
+    t.checkExpect(lost.tileColor(0, 0, 0), Color.WHITE);
+    t.checkExpect(lost.tileColor(2, 0, 0), new Color(156, 156, 156));
+    m1.undo();
+    t.checkExpect(lost.revealed[2], new int[] {0});
+    t.checkExpect(lost.flagged[2], new int[] {1});
+    t.checkExpect(lost.tileColor(0, 0, 0), Color.RED);
+    
+    // boards that fit the window have no minimap
+    t.checkExpect(m1.minimap(), null);
+    t.checkExpect(m1.sceneWidth(), 90);
+    // bigger ones show a view with the minimap beside it
+    MineSweeper wide = new MineSweeper(100, 60, 5L, 0, new SquareTopology());
+    t.checkExpect(wide.sceneWidth(), 40 * 30 + 256 + 20);
+    t.checkExpect(wide.sceneHeight(), 24 * 30);
+    wide.makeScene();
+    t.checkExpect(wide.minimap == null, false);
+    // clicking the minimap centers the view on the cell under it
+    wide.onMouseClicked(new Posn(40 * 30 + 10 + 128, 10 + 77), "LeftButton");
+    t.checkExpect(wide.viewRow, 30);
+    t.checkExpect(wide.viewColumn, 18);
+    // and clicks on the view land on the cells it shows
+    wide.onMouseClicked(new Posn(15, 15), "RightButton");
+    t.checkExpect(wide.cellAt(30 * 60 + 18).flag, true);
+    wide.onMouseClicked(new Posn(15, 24 * 30 + 10), "RightButton");
+    t.checkExpect(wide.flagCount, -1);
+    // the arrows move the view, which stays on the board
+    wide.onKeyEvent("right");
+    t.checkExpect(wide.viewRow, 50);
+    wide.onKeyEvent("right");
+    t.checkExpect(wide.viewRow, 60);
+    wide.onKeyEvent("up");
+    t.checkExpect(wide.viewColumn, 6);
+  }
+  
+  // tests for reading and writing boards
+  void testBoardIO(Tester t) {
+    init();
+    try {
+      Path text = Files.createTempFile("board", ".txt");
+      Path binary = Files.createTempFile("board", ".msb");
+      BoardIO.writeText(m1.packedMines(), text);
+      t.checkExpect(Files.readAllLines(text),
+          new ArrayList<String>(Arrays.asList("*..", "...", ".*.")));
+      BoardIO.writeBinary(m1.packedMines(), binary);
+      t.checkExpect(Files.size(binary), 16L + 3 * 8);
+      // both read back to the same board, with the counts filled in
+      PackedBoard fromText = BoardIO.read(text, new SquareTopology());
+      PackedBoard fromBinary = BoardIO.read(binary, new SquareTopology());
+      t.checkExpect(fromText.mines, m1.packedMines().mines);
+      t.checkExpect(fromBinary.mines, m1.packedMines().mines);
+      t.checkExpect(fromBinary.countMines(1, 1), 2);
+      t.checkExpect(fromText.countMines(0, 2), 0);
+      MineSweeper loaded = BoardIO.load(binary, new SquareTopology());
+      t.checkExpect(loaded.mines.toArray(), new int[] {0, 7});
+      t.checkExpect(loaded.mineCap, 2);
+      
+      // numbers count as empty cells, comments and blank lines are skipped,
+      // and the last line doesn't need a newline
+      Files.write(text, "# from another tool\r\n1*x1\r\n\r\n1221".getBytes("UTF-8"));
+      PackedBoard other = BoardIO.read(text, new SquareTopology());
+      t.checkExpect(other.rows, 2);
+      t.checkExpect(other.columns, 4);
+      t.checkExpect(other.mines, new long[] {6L, 0L});
+      
+      // a board wider than one word of bits
+      MineSweeper wide = new MineSweeper(5, 130, 9L, 200, new SquareTopology());
+      BoardIO.writeBinary(wide.packedMines(), binary);
+      t.checkExpect(BoardIO.read(binary, new SquareTopology()).mines, wide.packedMines().mines);
+      BoardIO.writeText(wide.packedMines(), text);
+      t.checkExpect(BoardIO.read(text, new SquareTopology()).mineCount(), 200);
+      
+      Files.write(text, Arrays.asList("*..", ".."));
+      t.checkException(new IOException("Row 1 has 2 cells instead of 3"),
+          new BoardIO(), "read", text, new SquareTopology());
+      Files.write(text, Arrays.asList("*.?"));
+      t.checkException(new IOException("Unexpected '?' in row 0"),
+          new BoardIO(), "read", text, new SquareTopology());
+      Files.write(text, Arrays.asList("# nothing here"));
+      t.checkException(new IOException("There is no board in the file"),
+          new BoardIO(), "read", text, new SquareTopology());
+      Files.delete(text);
+      Files.delete(binary);
+    }
+    catch (IOException e) {
+      t.checkExpect(e, null);
+    }
+  }
+  
+  // tests for sets of indices
+  void testIndexSet(Tester t) {
+    IndexSet set = new IndexSet(40);
+    for (int i = 0; i < 40; i += 2) {
+      set.add(i);
+    }
+    set.add(4);
+    t.checkExpect(set.size, 20);
+    set.remove(0);
+    set.remove(1);
+    set.remove(38);
+    t.checkExpect(set.contains(0), false);
+    t.checkExpect(set.contains(36), true);
+    t.checkExpect(set.toArray().length, 18);
+    t.checkExpect(set.toArray()[0], 2);
+    set.clear();
+    t.checkExpect(set.contains(36), false);
+  }
+  
+  // tests for keeping the frontier up to date
+  void testFrontier(Tester t) {
+    init();
+    Frontier frontier = m1.frontier();
+    t.checkExpect(frontier.cells.size, 0);
+    t.checkExpect(frontier.hidden, 9);
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    // c1, c2, c4, c5 revealed: c0, c3, c6, c7, c8 are next to them
+    t.checkExpect(frontier.cells.toArray(), new int[] {0, 3, 6, 7, 8});
+    // c2 is a zero, so only c1, c4 and c5 are active
+    t.checkExpect(frontier.numbers.toArray(), new int[] {1, 4, 5});
+    t.checkExpect(frontier.hidden, 5);
+    t.checkExpect(frontier.state, m1.visibleState());
+    // flags don't change it, revealing c6 takes it off
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    m1.onMouseClicked(new Posn(60, 0), "LeftButton");
+    t.checkExpect(frontier.cells.toArray(), new int[] {0, 3, 7, 8});
+    t.checkExpect(frontier.numbers.toArray(), new int[] {1, 4, 5, 6});
+    // and undoing puts it back
+    m1.undo();
+    t.checkExpect(frontier.cells.toArray(), new int[] {0, 3, 6, 7, 8});
+    // the solver works from it
+    t.checkExpect(new FrontierSolver().solve(m1).safe.toArray(), new int[] {6});
+    m1.onKeyEvent("r");
+    t.checkExpect(m1.frontier().cells.size, 0);
+    
+    // after lots of moves, it's the same as finding it from scratch
+    MineSweeper big = new MineSweeper(40, 30, 5L, 150, new SquareTopology());
+    big.frontier();
+    Random rand = new Random(3);
+    for (int k = 0; k < 60; k++) {
+      big.applyMove(new Move(MoveKind.values()[rand.nextInt(3)], rand.nextInt(40),
+          rand.nextInt(30)));
+      if (big.gameOver) {
+        big.undo();
+      }
+    }
+    Frontier fresh = new Frontier(big);
+    t.checkExpect(big.frontier().cells.toArray(), fresh.cells.toArray());
+    t.checkExpect(big.frontier().numbers.toArray(), fresh.numbers.toArray());
+    t.checkExpect(big.frontier().hidden, fresh.hidden);
+    t.checkExpect(big.frontier().cells.size > 0, true);
+  }
+  
+  // tests for revealing big openings a slice at a time
+  void testRevealScheduler(Tester t) {
+    // no mines: the whole board is one opening
+    MineSweeper open = new MineSweeper(200, 200, 1L, 0, new SquareTopology());
+    open.reveals.sliceNanos = 0;
+    open.onMouseClicked(new Posn(0, 0), "LeftButton");
+    // the first slice reveals the cells closest to the click
+    t.checkExpect(open.revealedSafe, RevealScheduler.MIN_CELLS);
+    t.checkExpect(open.cellAt(1).isRevealed(), true);
+    t.checkExpect(open.cellAt(199 * 200 + 199).isRevealed(), false);
+    t.checkExpect(open.reveals.pending(), true);
+    t.checkExpect(open.win, false);
+    // and each frame reveals more
+    open.onTick();
+    t.checkExpect(open.revealedSafe, 2 * RevealScheduler.MIN_CELLS);
+    t.checkExpect(open.seconds, 1);
+    // undo finishes the opening, then takes all of it back
+    open.onKeyEvent("u");
+    t.checkExpect(open.revealedSafe, 0);
+    t.checkExpect(open.reveals.pending(), false);
+    open.onKeyEvent("y");
+    t.checkExpect(open.win, true);
+    
+    // with mines, it stops at the same numbers the opening index does
+    MineSweeper sparse = new MineSweeper(150, 150, 4L, 40, new SquareTopology());
+    sparse.reveals.sliceNanos = 0;
+    OpeningIndex index = new OpeningIndex(sparse);
+    int start = 0;
+    while (index.regionOf[start] < 0 || index.regionSize(index.regionOf[start]) < 10000) {
+      start += 1;
+    }
+    sparse.applyMove(new Move(MoveKind.REVEAL, start / 150, start % 150));
+    sparse.flushEvents();
+    t.checkExpect(sparse.reveals.pending(), true);
+    while (sparse.reveals.pending()) {
+      sparse.onTick();
+    }
+    t.checkExpect(sparse.revealedSafe, index.regionSize(index.regionOf[start]));
+    t.checkExpect(sparse.history.undos.size(), 1);
+    t.checkExpect(sparse.history.recording, false);
+    
+    // the clock counts seconds, however many frames make one
+    init();
+    m1.tickSeconds = 1.0 / 30;
+    for (int k = 0; k < 29; k++) {
+      m1.onTick();
+    }
+    t.checkExpect(m1.seconds, 0);
+    m1.onTick();
+    t.checkExpect(m1.seconds, 1);
+    // even when a second isn't a whole number of frames
+    init();
+    m1.tickSeconds = 0.4;
+    m1.onTick();
+    m1.onTick();
+    t.checkExpect(m1.seconds, 0);
+    m1.onTick();
+    t.checkExpect(m1.seconds, 1);
+    m1.onTick();
+    m1.onTick();
+    t.checkExpect(m1.seconds, 2);
+    
+    // pressing a mine while an opening is still being revealed stops it,
+    // and the loss finishes the move
+    sparse.onKeyEvent("r");
+    sparse.reveals.sliceNanos = 0;
+    index = new OpeningIndex(sparse);
+    start = 0;
+    while (index.regionOf[start] < 0 || index.regionSize(index.regionOf[start]) < 10000) {
+      start += 1;
+    }
+    sparse.applyMove(new Move(MoveKind.REVEAL, start / 150, start % 150));
+    t.checkExpect(sparse.reveals.pending(), true);
+    int mine = sparse.mines.get(0);
+    sparse.applyMove(new Move(MoveKind.REVEAL, mine / 150, mine % 150));
+    t.checkExpect(sparse.gameOver, true);
+    t.checkExpect(sparse.reveals.pending(), false);
+    t.checkExpect(sparse.history.recording, false);
+    int shown = sparse.revealedSafe;
+    sparse.onTick();
+    t.checkExpect(sparse.revealedSafe, shown);
+    // undoing the loss takes back the part of the opening revealed too
+    sparse.undo();
+    t.checkExpect(sparse.revealedSafe, 0);
+    t.checkExpect(sparse.gameOver, false);
+  }
+  
+  // tests for keeping statistics of finished games
+  void testStatsStore(Tester t) {
+    init();
+    try {
+      Path dir = Files.createTempDirectory("stats");
+      StatsStore store = new StatsStore(dir);
+      for (int k = 0; k < 10; k++) {
+        store.add(new GameRecord("beginner", 9, 9, 10, false, 0, 10000 - 500 * k,
+            k % 3 == 0 ? GameStatus.LOST : GameStatus.WON, 20 + k, 30, 1000L * k));
+      }
+      store.add(new GameRecord("custom", 20, 10, 30, true, 42, 4000, GameStatus.WON, 50,
+          60, 0));
+      t.checkExpect(store.games("beginner"), 10);
+      t.checkExpect(store.winRate("beginner"), 0.6);
+      // the wins took 9500, 9000, 8000, 7500, 6500 and 6000 ms
+      t.checkExpect(store.bestTime("beginner"), 6000L);
+      t.checkExpect(store.percentile("beginner", 0.5), 7500L);
+      t.checkExpect(store.percentile("beginner", 1), 9500L);
+      t.checkExpect(store.best("beginner", 2), new int[] {8, 7});
+      t.checkExpect(store.record(8).threeBV, 28);
+      t.checkExpect(store.games("custom 20x10/30"), 1);
+      t.checkExpect(store.record(10).seed, 42L);
+      t.checkExpect(store.record(10).result, GameStatus.WON);
+      t.checkExpect(store.bestTime("expert"), -1L);
+      store.close();
+      
+      // opening again reads the index, not the log
+      StatsStore reopened = new StatsStore(dir);
+      t.checkExpect(reopened.replayed, 0);
+      t.checkExpect(reopened.percentile("beginner", 0.5), 7500L);
+      reopened.add(new GameRecord("beginner", 9, 9, 10, false, 0, 5000, GameStatus.WON, 20,
+          25, 0));
+      // without saving the index, only the records after it are read
+      StatsStore crashed = new StatsStore(dir);
+      t.checkExpect(crashed.replayed, 1);
+      t.checkExpect(crashed.bestTime("beginner"), 5000L);
+      t.checkExpect(crashed.best("beginner", 1), new int[] {11});
+      
+      // a finished game is recorded as it ends
+      StatsStore games = new StatsStore(dir);
+      m1.addListener(new StatsRecorder(games, m1, "custom", true, 20));
+      m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+      m1.onMouseClicked(new Posn(60, 30), "LeftButton");
+      // the writer thread adds it
+      games.flush();
+      t.checkExpect(games.games("custom 3x3/2"), 1);
+      GameRecord lost = games.record(12);
+      t.checkExpect(lost.result, GameStatus.LOST);
+      t.checkExpect(lost.clicks, 2);
+      t.checkExpect(lost.threeBV, 4);
+      // an undone loss isn't recorded twice
+      m1.undo();
+      m1.onMouseClicked(new Posn(60, 30), "LeftButton");
+      games.flush();
+      t.checkExpect(games.games("custom 3x3/2"), 1);
+      // a preset's leaderboard only has its own board; other sizes go with
+      // the custom games of that size
+      t.checkExpect(StatsStore.board("expert", 30, 16, 99), "expert");
+      t.checkExpect(StatsStore.board("expert", 30, 16, 45), "custom 30x16/45");
+      t.checkExpect(StatsStore.board("beginner", 16, 16, 40), "custom 16x16/40");
+      games.close();
+      reopened.close();
+      crashed.close();
+      
+      Files.delete(dir.resolve(StatsStore.LOG));
+      Files.delete(dir.resolve(StatsStore.INDEX));
+      Files.delete(dir);
+    }
+    catch (IOException e) {
+      t.checkExpect(e, null);
+    }
+  }
+  
+  // tests for playing in a terminal
+  void testTerminalFrontend(Tester t) {
+    init();
+    TerminalFrontend term = new TerminalFrontend(m1, 3, 3);
+    String esc = TerminalFrontend.ESC;
+    // the first frame draws everything, with the cursor on c0
+    t.checkExpect(term.frame(), esc + "[0m" + esc + "[2J"
+        + esc + "[1;1H" + esc + "[0;37;7m." + esc + "[0;37m.."
+        + esc + "[2;1H..." + esc + "[3;1H..." + esc + "[4;1H" + esc + "[0mFla");
+    // then nothing, until something changes
+    t.checkExpect(term.frame(), "");
+    term.key('j');
+    term.key(27);
+    term.key('[');
+    term.key('B');
+    t.checkExpect(term.cursorColumn, 2);
+    t.checkExpect(term.frame(), esc + "[1;1H" + esc + "[0;37m." + esc + "[3;1H"
+        + esc + "[0;37;7m." + esc + "[0m");
+    // revealing c2's opening sends just its four cells
+    term.key(' ');
+    t.checkExpect(term.frame(), esc + "[2;1H" + esc + "[0;34m1" + esc + "[0;32m2"
+        + esc + "[3;1H" + esc + "[0;7m " + esc + "[0;34m1" + esc + "[0m");
+    term.key('k');
+    term.key('k');
+    term.key('f');
+    t.checkExpect(m1.flagCount, 1);
+    t.checkExpect(term.status(), "Flags 1  00:00  (0, 0)");
+    term.key('q');
+    t.checkExpect(term.running, false);
+    
+    // the viewport scrolls to keep the cursor in sight
+    MineSweeper big = new MineSweeper(1000, 1000, 2L, 150000, new SquareTopology());
+    TerminalFrontend view = new TerminalFrontend(big, 80, 23);
+    t.checkExpect(view.frame().length() > 80 * 23, true);
+    view.key('L');
+    view.key('L');
+    t.checkExpect(view.cursorRow, 160);
+    t.checkExpect(view.viewRow, 81);
+    view.key('J');
+    t.checkExpect(view.viewColumn, 1);
+    for (int k = 0; k < 30; k++) {
+      view.key('h');
+    }
+    t.checkExpect(view.viewRow, 81);
+    t.checkExpect(view.cursorRow, 130);
+    // a moved cursor is only two cells and the status line
+    view.frame();
+    view.key('h');
+    t.checkExpect(view.frame().length() < 60, true);
+  }
+  
+  // tests for streaming a game to watchers
+  void testSpectatorHub(Tester t) {
+    init();
+    SpectatorHub hub = new SpectatorHub(m1);
+    Spectator fast = hub.subscribe();
+    Spectator slow = hub.subscribe(2);
+    SpectatorView fastView = new SpectatorView();
+    SpectatorView slowView = new SpectatorView();
+    // everyone starts from a snapshot, encoded once
+    ByteBuffer first = fast.poll();
+    t.checkExpect(first.get(0), SpectatorHub.SNAPSHOT);
+    t.checkExpect(first.isReadOnly(), true);
+    fastView.apply(first);
+    slowView.apply(slow.poll());
+    t.checkExpect(slow.poll(), null);
+    
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    m1.onMouseClicked(new Posn(60, 0), "LeftButton");
+    // the opening's frame: a header and four reveals
+    ByteBuffer flag = fast.poll();
+    ByteBuffer opening = fast.poll();
+    t.checkExpect(opening.remaining(), 13 + 4 * 6);
+    t.checkExpect(opening.getLong(1), 2L);
+    fastView.apply(flag);
+    fastView.apply(opening);
+    fastView.apply(fast.poll());
+    t.checkExpect(fast.poll(), null);
+    t.checkExpect(fastView.cells, new byte[] {10, 1, 0, 11, 2, 1, 1, 11, 11});
+    t.checkExpect(fastView.cells, hub.cells);
+    
+    // the slow watcher, two frames behind at most, missed one and
+    // catches up from a snapshot of the same bytes
+    t.checkExpect(slow.resyncs, 1);
+    ByteBuffer catchUp = slow.poll();
+    t.checkExpect(catchUp.get(0), SpectatorHub.SNAPSHOT);
+    t.checkExpect(catchUp.getLong(1), 3L);
+    slowView.apply(catchUp);
+    t.checkExpect(slowView.cells, fastView.cells);
+    t.checkExpect(slow.poll(), null);
+    
+    // a loss shows the flagged mine, and undoing it covers the mine
+    // with its flag still on
+    m1.onMouseClicked(new Posn(60, 30), "LeftButton");
+    slowView.apply(slow.poll());
+    t.checkExpect(slowView.status, MoveHistory.LOST);
+    t.checkExpect(slowView.cells[0], SpectatorHub.MINE);
+    m1.undo();
+    slowView.apply(slow.poll());
+    t.checkExpect(slowView.status, MoveHistory.PLAYING);
+    t.checkExpect(slowView.cells[0], SpectatorHub.FLAGGED);
+    t.checkExpect(slowView.cells[7], SpectatorHub.HIDDEN);
+    t.checkExpect(slowView.cells, hub.cells);
+    t.checkExpect(hub.snapshot().get(22), SpectatorHub.FLAGGED);
+    
+    // a loss, then a restart
+    m1.onMouseClicked(new Posn(60, 30), "LeftButton");
+    m1.onKeyEvent("r");
+    slowView.apply(slow.poll());
+    t.checkExpect(slowView.status, MoveHistory.LOST);
+    slowView.apply(slow.poll());
+    t.checkExpect(slowView.status, MoveHistory.PLAYING);
+    t.checkExpect(slowView.cells[4], SpectatorHub.HIDDEN);
+    
+    // the frames every watcher gets are the same bytes
+    hub.unsubscribe(fast);
+    Spectator a = hub.subscribe();
+    Spectator b = hub.subscribe();
+    a.poll();
+    b.poll();
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    ByteBuffer fromA = a.poll();
+    ByteBuffer fromB = b.poll();
+    t.checkExpect(fromA == fromB, false);
+    fromA.position(5);
+    t.checkExpect(fromB.position(), 0);
+    t.checkExpect(fromA.duplicate().position(0).equals(fromB), true);
+  }
+  
+  // tests for hints worked out in the background
+  void testHint(Tester t) {
+    init();
+    // before any reveal every cell is as risky as the next, so the first
+    // one is the guess
+    m1.onKeyEvent("h");
+    t.checkExpect(m1.hint, null);
+    try {
+      m1.hints.pending.get();
+    }
+    catch (InterruptedException | ExecutionException e) {
+      t.checkExpect(e, null);
+    }
+    m1.onTick();
+    t.checkExpect(m1.hint.cell, 0);
+    t.checkExpect(m1.hint.certain, false);
+    t.checkInexact(m1.hint.chance, 2.0 / 9, 0.001);
+    // c2's opening proves c6 safe
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    t.checkExpect(m1.hint, null);
+    m1.onKeyEvent("h");
+    Hint found = null;
+    try {
+      found = m1.hints.pending.get();
+    }
+    catch (InterruptedException | ExecutionException e) {
+      t.checkExpect(e, null);
+    }
+    t.checkExpect(m1.hint, null);
+    m1.onTick();
+    t.checkExpect(m1.hint, found);
+    t.checkExpect(m1.hint.cell, 6);
+    t.checkExpect(m1.hint.certain, true);
+    t.checkExpect(m1.hints.pending, null);
+    // a flag changes nothing known, so the hint stays
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    t.checkExpect(m1.hint, found);
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    // taking the hint hides it, and asking again after undoing is
+    // answered at once from the cache
+    m1.onMouseClicked(new Posn(60, 0), "LeftButton");
+    t.checkExpect(m1.hint, null);
+    m1.onKeyEvent("u");
+    m1.onKeyEvent("h");
+    t.checkExpect(m1.hint, found);
+    t.checkExpect(m1.hints.pending, null);
+    // a move cancels analysis of the position it leaves
+    m1.onKeyEvent("r");
+    CountDownLatch busy = new CountDownLatch(1);
+    m1.hints.executor.submit(() -> {
+      busy.await();
+      return 0;
+    });
+    m1.hints.cache = new AnalysisCache<Hint>(HintService.CACHE_SIZE);
+    m1.onKeyEvent("h");
+    Future<Hint> stale = m1.hints.pending;
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    busy.countDown();
+    t.checkExpect(stale.isCancelled(), true);
+    t.checkExpect(m1.hints.pending, null);
+    m1.onTick();
+    t.checkExpect(m1.hint, null);
+    // no hints once the game is over
+    m1.lose();
+    m1.onKeyEvent("h");
+    t.checkExpect(m1.hint, null);
+    t.checkExpect(m1.hints.pending, null);
+  }
+
+  // tests for undoing and redoing moves
+  void testMoveHistory(Tester t) {
+    init();
+    long start = m1.hash;
+    t.checkExpect(m1.undo(), false);
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    t.checkExpect(m1.revealedSafe, 4);
+    // pressing a revealed cell changes nothing, so there's nothing to undo
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    t.checkExpect(m1.history.undos.size(), 2);
+    
+    // undoing the opening covers just its cells
+    m1.onKeyEvent("u");
+    t.checkExpect(m1.revealedSafe, 0);
+    t.checkExpect(c2.revealed, false);
+    t.checkExpect(c4.revealed, false);
+    t.checkExpect(c0.flag, true);
+    t.checkExpect(m1.undo(), true);
+    t.checkExpect(c0.flag, false);
+    t.checkExpect(m1.flagCount, 2);
+    t.checkExpect(m1.hash, start);
+    // and redoing makes both moves again
+    m1.onKeyEvent("y");
+    t.checkExpect(m1.redo(), true);
+    t.checkExpect(m1.redo(), false);
+    t.checkExpect(c0.flag, true);
+    t.checkExpect(c5.revealed, true);
+    t.checkExpect(m1.revealedSafe, 4);
+    
+    // a loss can be taken back too
+    long beforeLoss = m1.hash;
+    m1.onMouseClicked(new Posn(60, 30), "LeftButton");
+    t.checkExpect(m1.gameOver, true);
+    t.checkExpect(c0.revealed, true);
+    m1.undo();
+    t.checkExpect(m1.gameOver, false);
+    t.checkExpect(c0.revealed, false);
+    t.checkExpect(c7.revealed, false);
+    t.checkExpect(m1.hash, beforeLoss);
+    // a new move drops what was undone
+    m1.onMouseClicked(new Posn(60, 0), "LeftButton");
+    t.checkExpect(m1.redo(), false);
+    
+    // the oldest moves are forgotten once the history is full
+    m1.history.setCapacity(3);
+    t.checkExpect(m1.history.undos.size(), 1);
+    t.checkExpect(m1.history.stored, 2);
+    m1.onKeyEvent("r");
+    t.checkExpect(m1.undo(), false);
+    t.checkConstructorException(
+        new IllegalArgumentException("History capacity can't be negative"),
+        "MoveHistory", -1);
+    // kinds are stored as 2-bit codes, and only the kinds a move makes fit
+    for (int kind : MoveHistory.KINDS) {
+      t.checkExpect(MoveHistory.kind(7 << 2 | MoveHistory.code(kind)), kind);
+    }
+    MoveHistory history = new MoveHistory(16);
+    history.begin(MoveHistory.PLAYING);
+    t.checkException(new IllegalArgumentException("Can't record a change of kind 8"),
+        history, "record", 0, BoardEvents.COVERED);
+    t.checkException(new IllegalArgumentException("Unknown game status 3"),
+        history, "commit", 3);
+  }
+  
+  // tests for listening to a game's events
+  void testEventStream(Tester t) {
+    init();
+    EventStream stream = new EventStream(16, BackPressure.DROP_OLDEST);
+    m1.addListener(stream);
+    long[] out = new long[16];
+    t.checkExpect(stream.poll(out), 0);
+    
+    // one click, one batch
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    t.checkExpect(stream.poll(out), 1);
+    t.checkExpect(BoardEvents.kind(out[0]), BoardEvents.FLAGGED);
+    t.checkExpect(BoardEvents.index(out[0]), 0);
+    
+    // opening c2 reveals 4 cells in one batch
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    t.checkExpect(stream.poll(out), 4);
+    t.checkExpect(BoardEvents.kind(out[3]), BoardEvents.REVEALED);
+    t.checkExpect(stream.poll(out), 0);
+    
+    // losing reveals the pressed mine and the flagged one, then reports the loss
+    m1.onMouseClicked(new Posn(60, 30), "LeftButton");
+    t.checkExpect(stream.poll(out), 3);
+    t.checkExpect(BoardEvents.kind(out[2]), BoardEvents.LOST);
+    t.checkExpect(BoardEvents.index(out[2]), -1);
+    
+    // restarting is a batch of its own
+    m1.onKeyEvent("r");
+    t.checkExpect(stream.poll(out), 1);
+    t.checkExpect(BoardEvents.kind(out[0]), BoardEvents.RESTARTED);
+    
+    // a full stream drops the oldest batches and says so
+    EventStream small = new EventStream(4, BackPressure.DROP_OLDEST);
+    small.onEvents(new long[] {1, 2}, 2);
+    small.onEvents(new long[] {3, 4}, 2);
+    t.checkExpect(small.poll(out), 1);
+    t.checkExpect(BoardEvents.kind(out[0]), BoardEvents.OVERFLOW);
+    t.checkExpect(small.poll(out), 2);
+    t.checkExpect(out[0], 3L);
+    
+    // or drops the newest, reporting the gap after what it kept
+    EventStream newest = new EventStream(4, BackPressure.DROP_NEWEST);
+    newest.onEvents(new long[] {1, 2}, 2);
+    newest.onEvents(new long[] {3, 4}, 2);
+    t.checkExpect(newest.poll(out), 2);
+    t.checkExpect(out[0], 1L);
+    t.checkExpect(newest.poll(out), 1);
+    t.checkExpect(BoardEvents.kind(out[0]), BoardEvents.OVERFLOW);
+    t.checkExpect(newest.poll(out), 0);
+  }
+  
+  // tests for the Zobrist hash and the analysis cache
+  void testZobrist(Tester t) {
+    init();
+    t.checkExpect(m1.hash, 0L);
+    // flagging and unflagging puts the hash back
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    long flagged = m1.hash;
+    t.checkExpect(flagged == 0, false);
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    t.checkExpect(m1.hash, 0L);
+    
+    // the hash is the same however the position was reached
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    m1.onMouseClicked(new Posn(0, 0), "RightButton");
+    MineSweeper same = new MineSweeper(3, 3, new Random(20), 2);
+    same.onMouseClicked(new Posn(0, 0), "RightButton");
+    same.onMouseClicked(new Posn(0, 60), "LeftButton");
+    t.checkExpect(m1.hash, same.hash);
+    // and matches hashing every cell from scratch
+    t.checkExpect(Zobrist.hashOf(m1, new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8}), m1.hash);
+    
+    // moving a mine away from the revealed c5 changes its number, and the
+    // hash follows it
+    long before = m1.hash;
+    m1.moveMine(7, 6);
+    t.checkExpect(c5.countMines(), 0);
+    t.checkExpect(m1.hash == before, false);
+    t.checkExpect(Zobrist.hashOf(m1, new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8}), m1.hash);
+    
+    // restarting clears it
+    m1.onKeyEvent("r");
+    t.checkExpect(m1.hash, 0L);
+    
+    // the cache keeps recently used results
+    AnalysisCache<String> cache = new AnalysisCache<String>(2);
+    cache.put(1, "one");
+    cache.put(2, "two");
+    t.checkExpect(cache.get(1), "one");
+    // 1 was used, so 2 goes first
+    cache.put(3, "three");
+    t.checkExpect(cache.get(2), null);
+    t.checkExpect(cache.get(1), "one");
+    t.checkExpect(cache.get(3), "three");
+    t.checkExpect(cache.size(), 2);
+    t.checkExpect(cache.hits, 3);
+    t.checkExpect(cache.misses, 1);
+    t.checkConstructorException(
+        new IllegalArgumentException("A cache needs room for at least one result"),
+        "AnalysisCache", 0);
+  }
+  
+  // tests for the frontier solver
+  void testFrontierSolver(Tester t) {
+    init();
+    // opening c2 shows c1 = 1, c4 = 2, c5 = 1
+    m1.onMouseClicked(new Posn(0, 60), "LeftButton");
+    SolverResult result = new FrontierSolver().solve(m1);
+    // c1 puts one mine in c0 or c3 and c5 one in c7 or c8, which is
+    // all of c4's two, so c6 has to be safe
+    t.checkExpect(result.mines.size, 0);
+    t.checkExpect(result.safe.toArray(), new int[] {6});
+    
+    // a 1-2-1 along a wall: the classic pattern only elimination sees
+    //   row 0: ? ? ?
+    //   row 1: 1 2 1
+    //   row 2: 0 0 0 (revealed)
+    int[] state = new int[] {
+      FrontierSolver.HIDDEN, FrontierSolver.HIDDEN, FrontierSolver.HIDDEN,
+      1, 2, 1,
+      0, 0, 0};
+    NeighborTable table = new NeighborTable(new SquareTopology(), 3, 3);
+    SolverResult pattern = new FrontierSolver().solve(state, table, 2);
+    t.checkExpect(pattern.mines.toArray(), new int[] {0, 2});
+    t.checkExpect(pattern.safe.toArray(), new int[] {1});
+    
+    // a lone 1 between two cells proves nothing, even with the total of
+    // 3 mines added as an equation over all 19 covered cells
+    MineSweeper m5 = new MineSweeper(1, 20, new Random(4), 0);
+    int[] lone = new int[20];
+    Arrays.fill(lone, FrontierSolver.HIDDEN);
+    lone[10] = 1;
+    SolverResult none = new FrontierSolver().solve(lone, m5.neighborTable, 3);
+    t.checkExpect(none.safe.size + none.mines.size, 0);
+  }
+  
+  // tests for rating boards
+  void testBoardRater(Tester t) {
+    // one mine in a corner: the opening clears everything at once
+    PackedBoard corner = new PackedBoard(3, 3);
+    corner.placeMine(0, 0);
+    corner.counts = new byte[] {0, 1, 0, 1, 1, 0, 0, 0, 0};
+    BoardRater small = new BoardRater(new SquareTopology(), 3, 3, 1);
+    BoardRating easy = small.rate(corner, 0, -1);
+    t.checkExpect(easy.threeBV, 1);
+    t.checkExpect(easy.openings, 1);
+    t.checkExpect(easy.noGuess, true);
+    t.checkExpect(easy.cellsSolved, 8);
+    
+    // a 2 x 2 board with one mine: the first 1 can't tell which it is
+    PackedBoard guess = new PackedBoard(2, 2);
+    guess.placeMine(0, 0);
+    guess.counts = new byte[] {0, 1, 1, 1};
+    BoardRating hard = new BoardRater(new SquareTopology(), 2, 2, 1).rate(guess, 0, 3);
+    t.checkExpect(hard.threeBV, 3);
+    t.checkExpect(hard.openings, 0);
+    t.checkExpect(hard.noGuess, false);
+    t.checkExpect(hard.cellsSolved, 1);
+    // starting on the mine solves nothing
+    t.checkExpect(new BoardRater(new SquareTopology(), 2, 2, 1).rate(guess, 0, 0).cellsSolved, 0);
+    // a board with a different number of mines would get the wrong deductions
+    t.checkException(new IllegalArgumentException(
+        "This rater is for 2 x 2 boards with 2 mines, not 2 x 2 with 1"),
+        new BoardRater(new SquareTopology(), 2, 2, 2), "rate", guess, 0L, 3);
+    t.checkException(new IllegalArgumentException(
+        "This rater is for 3 x 3 boards with 1 mines, not 2 x 2 with 1"),
+        small, "rate", guess, 0L, 3);
+    
+    // seeds rate the same however they're split up, and match a full game
+    BoardRater expert = new BoardRater(new SquareTopology(), 30, 16, 99);
+    ArrayList<BoardRating> ratings = expert.rateSeeds(10, 20);
+    t.checkExpect(ratings.size(), 10);
+    t.checkExpect(ratings.get(3).seed, 13L);
+    t.checkExpect(ratings.get(3).threeBV, expert.rateSeed(13).threeBV);
+    MineSweeper m5 = new MineSweeper(30, 16, 13, 99, new SquareTopology());
+    t.checkExpect(ratings.get(3).threeBV, m5.openingIndex().threeBV());
+  }
+}